@@ -0,0 +1,92 @@
+package com.example.imudatasampler;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SessionCatalogTest {
+    private static final String DEVICE = "00:04:79:00:0F:4D";
+    private static final String[] STREAMS = {"esense_imu", "accelerometer", "gyroscope"};
+
+    private SessionCatalog mCatalog;
+
+    @Before
+    public void setUp() {
+        mCatalog = new SessionCatalog(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(), null);
+    }
+
+    @After
+    public void tearDown() {
+        mCatalog.close();
+    }
+
+    @Test
+    public void findSessions_filtersByDeviceTimeAndESenseLoss() {
+        // 2% eSense loss, hidden below 1% if the lossless phone streams counted towards it.
+        addSession(1000, DEVICE, 20);
+        addSession(2000, DEVICE, 0);
+        addSession(3000, "other", 0);
+        addSession(4000, DEVICE, 0);
+
+        List<SessionCatalog.Session> sessions = mCatalog.findSessions(DEVICE, 0, 4000, 0.01);
+
+        assertEquals(1, sessions.size());
+        assertEquals(2000, sessions.get(0).id);
+        assertEquals(0, sessions.get(0).lossRatio, 0);
+
+        sessions = mCatalog.findSessions(null, 0, Long.MAX_VALUE, 1);
+        assertEquals(4, sessions.size());
+        // Newest first.
+        assertEquals(4000, sessions.get(0).id);
+        assertEquals(1000, sessions.get(3).id);
+        assertEquals(0.02, sessions.get(3).lossRatio, 1e-9);
+        assertEquals(3 * 980 + 20, sessions.get(3).sampleCount + sessions.get(3).lostCount);
+    }
+
+    @Test
+    public void findSessionsByExportStatus_returnsOldestFirst() {
+        addSession(2000, DEVICE, 0);
+        addSession(1000, DEVICE, 0);
+        mCatalog.setExportStatus(2000, SessionCatalog.EXPORT_FAILED);
+        mCatalog.setExportStatus(1000, SessionCatalog.EXPORT_FAILED);
+
+        List<SessionCatalog.Session> sessions =
+                mCatalog.findSessionsByExportStatus(SessionCatalog.EXPORT_FAILED);
+
+        assertEquals(2, sessions.size());
+        assertEquals(1000, sessions.get(0).id);
+        assertTrue(mCatalog.findSessionsByExportStatus(SessionCatalog.EXPORT_PENDING).isEmpty());
+    }
+
+    @Test
+    public void updateProgress_worksAfterCatalogIsReopened() {
+        addSession(1000, DEVICE, 0);
+        mCatalog.close();
+
+        // The in-memory database starts over; its statements must be compiled anew.
+        addSession(2000, DEVICE, 10);
+
+        List<SessionCatalog.Session> sessions = mCatalog.findSessions(null, 0, 3000, 1);
+        assertEquals(1, sessions.size());
+        assertEquals(2000, sessions.get(0).id);
+        assertEquals(10, sessions.get(0).lostCount);
+    }
+
+    // Records a session whose eSense stream lost eSenseLost of 1000 packets, next to phone
+    // streams with 980 samples each and no loss tracking.
+    private void addSession(long session, String device, long eSenseLost) {
+        mCatalog.beginSession(session, device, "mode=raw");
+        mCatalog.updateProgress(session, session + 10000, STREAMS,
+                new long[]{1000 - eSenseLost, 980, 980}, new long[]{eSenseLost, 0, 0});
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.imudatasampler;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+
+/**
+ * Scrolling plot of a multi-channel IMU stream. Samples are folded into a
+ * {@link MinMaxDecimator} as they arrive and the view redraws at most once per display vsync,
+ * so drawing cost is bounded by the column count and not by the sampling rate. All buffers
+ * used while drawing are allocated up front.
+ *
+ * Frame callbacks are only requested while new samples arrive, so an idle plot does not wake
+ * the UI thread.
+ *
+ * Samples must be added on the UI thread, which is where both the BLE broadcast receiver and
+ * the sensor listener are called.
+ */
+public class ImuPlotView extends View implements Choreographer.FrameCallback {
+    private static final int COLUMN_COUNT = 256;
+    private static final long WINDOW_MILLIS = 5000;
+    private static final int[] CHANNEL_COLORS = {
+            0xFFFF5252, 0xFF69F0AE, 0xFF448AFF, 0xFFFFD740, 0xFFE040FB, 0xFF18FFFF
+    };
+
+    private MinMaxDecimator mDecimator;
+    private final Paint mLinePaint = new Paint();
+    private final Paint mAxisPaint = new Paint();
+
+    private final float[] mColumnMin = new float[COLUMN_COUNT];
+    private final float[] mColumnMax = new float[COLUMN_COUNT];
+    // Two segments per column: the min/max bar and the link from the previous column.
+    private final float[] mLinePoints = new float[COLUMN_COUNT * 8];
+
+    private boolean mAttached;
+    private boolean mDirty;
+    private boolean mFramePosted;
+    private long mFrameIntervalNanos = 16666667L;
+    private long mLastFrameTimeNanos;
+
+    private long mLastDrawNanos;
+    private long mDroppedFrames;
+
+    public ImuPlotView(Context context) {
+        this(context, null);
+    }
+
+    public ImuPlotView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mLinePaint.setStrokeWidth(2f);
+        mLinePaint.setAntiAlias(false);
+        // A square cap keeps single-sample columns, whose bar has no length, visible.
+        mLinePaint.setStrokeCap(Paint.Cap.SQUARE);
+        mAxisPaint.setColor(Color.DKGRAY);
+        mAxisPaint.setStrokeWidth(1f);
+        setChannelCount(3);
+    }
+
+    /**
+     * Sets the number of plotted channels. Discards the plotted history, so this should be
+     * called while setting up the view and not per sample.
+     */
+    public void setChannelCount(int channelCount) {
+        mDecimator = new MinMaxDecimator(channelCount, COLUMN_COUNT, WINDOW_MILLIS);
+        markDirty();
+    }
+
+    public void addSample(long timeMillis, float[] values, int firstChannel, int count) {
+        mDecimator.add(timeMillis, values, firstChannel, count);
+        markDirty();
+    }
+
+    public void clear() {
+        mDecimator.clear();
+        markDirty();
+    }
+
+    /**
+     * @return Return the time spent in the last {@link #onDraw(Canvas)} call, in nanoseconds.
+     */
+    public long getLastDrawNanos() {
+        return mLastDrawNanos;
+    }
+
+    /**
+     * @return Return the number of vsync intervals missed between consecutive plot frames
+     * since the view was attached.
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display display = getDisplay();
+        if (display != null && display.getRefreshRate() > 0) {
+            mFrameIntervalNanos = (long) (1000000000L / display.getRefreshRate());
+        }
+        mAttached = true;
+        mLastFrameTimeNanos = 0;
+        if (mDirty) {
+            postFrame();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttached = false;
+        mFramePosted = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePosted = false;
+        if (!mAttached) {
+            return;
+        }
+        if (!mDirty) {
+            // No new samples since the last plot frame: stop until the next one arrives, and
+            // don't count the idle gap as dropped frames.
+            mLastFrameTimeNanos = 0;
+            return;
+        }
+        if (mLastFrameTimeNanos != 0) {
+            long missed = (frameTimeNanos - mLastFrameTimeNanos) / mFrameIntervalNanos - 1;
+            if (missed > 0) {
+                mDroppedFrames += missed;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        mDirty = false;
+        invalidate();
+        // Look for more samples on the next vsync.
+        postFrame();
+    }
+
+    private void markDirty() {
+        mDirty = true;
+        if (mAttached && !mFramePosted) {
+            postFrame();
+        }
+    }
+
+    private void postFrame() {
+        mFramePosted = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final long start = System.nanoTime();
+        final float width = getWidth();
+        final float height = getHeight();
+        canvas.drawLine(0, height / 2, width, height / 2, mAxisPaint);
+
+        final int channelCount = mDecimator.getChannelCount();
+        // Scale every channel against the same range so relative magnitudes are preserved.
+        float low = Float.MAX_VALUE;
+        float high = -Float.MAX_VALUE;
+        for (int channel = 0; channel < channelCount; channel++) {
+            if (!mDecimator.copyChannel(channel, mColumnMin, mColumnMax)) {
+                mLastDrawNanos = System.nanoTime() - start;
+                return;
+            }
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                if (mColumnMin[i] < low) low = mColumnMin[i];
+                if (mColumnMax[i] > high) high = mColumnMax[i];
+            }
+        }
+        if (low > high) {
+            mLastDrawNanos = System.nanoTime() - start;
+            return;
+        }
+        final float range = Math.max(high - low, 1e-6f);
+        final float yScale = (height - 2) / range;
+        final float xStep = width / (COLUMN_COUNT - 1);
+
+        for (int channel = 0; channel < channelCount; channel++) {
+            mDecimator.copyChannel(channel, mColumnMin, mColumnMax);
+            int n = 0;
+            // Midpoint of the previous non-empty column. Streams slower than the column
+            // period leave empty columns between samples, which the link bridges.
+            float previousX = Float.NaN;
+            float previousY = Float.NaN;
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                if (Float.isNaN(mColumnMin[i])) {
+                    continue;
+                }
+                final float x = i * xStep;
+                final float yMin = height - 1 - (mColumnMin[i] - low) * yScale;
+                final float yMax = height - 1 - (mColumnMax[i] - low) * yScale;
+                final float yMid = (yMin + yMax) / 2;
+                if (!Float.isNaN(previousX)) {
+                    mLinePoints[n++] = previousX;
+                    mLinePoints[n++] = previousY;
+                    mLinePoints[n++] = x;
+                    mLinePoints[n++] = yMid;
+                }
+                mLinePoints[n++] = x;
+                mLinePoints[n++] = yMin;
+                mLinePoints[n++] = x;
+                mLinePoints[n++] = yMax;
+                previousX = x;
+                previousY = yMid;
+            }
+            mLinePaint.setColor(CHANNEL_COLORS[channel % CHANNEL_COLORS.length]);
+            canvas.drawLines(mLinePoints, 0, n, mLinePaint);
+        }
+        mLastDrawNanos = System.nanoTime() - start;
+    }
+}
@@ -9,7 +9,9 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.DialogInterface;
 import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
@@ -17,23 +19,27 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.apache.commons.lang3.ArrayUtils;
-
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -52,22 +58,116 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private static final int REQUEST_ENABLE_BT = 1;
     private static final int REQUEST_ID_MULTIPLE_PERMISSIONS = 85;
 
+    private static final long METRICS_UPDATE_INTERVAL_MILLIS = 500;
+
+    // Full-rate history kept in rollup mode, and the rates used to size it.
+    private static final int ROLLUP_RING_MINUTES = 5;
+    private static final int ESENSE_MAX_RATE_HZ = 100;
+    private static final int PHONE_SENSOR_MAX_RATE_HZ = 200;
+    private static final int ESENSE_PACKET_SIZE = 16;
+    private static final int ESENSE_RECORD_SIZE = ESENSE_PACKET_SIZE + Long.BYTES;
+    private static final String ESENSE_STREAM = "esense_imu";
+    private static final String[] ESENSE_AXES =
+            {"gyro_x", "gyro_y", "gyro_z", "acc_x", "acc_y", "acc_z"};
+
+    // Comma-separated names of the phone sensors recorded by the next session.
+    private static final String PREF_RECORDED_SENSORS = "recorded_sensors";
+
+    // Motion detection for triggered capture, relative to the resting magnitude.
+    private static final float MOTION_ENTER_RATIO = 0.15f;
+    private static final float MOTION_EXIT_RATIO = 0.08f;
+    private static final float MOTION_BASELINE_ALPHA = 0.02f;
+    private static final int ESENSE_MOTION_DETECTOR = 0;
+    private static final int PHONE_MOTION_DETECTOR = 1;
+
+    private static final int UPLOAD_CONCURRENCY = 2;
+
+    private static final long CATALOG_UPDATE_INTERVAL_MILLIS = 5000;
+
     private TextView mConnectionState;
     private int connectionState = STATE_DISCONNECTED;
 
+    private ImuPlotView mESensePlot;
+    private ImuPlotView mPhonePlot;
+    private TextView mMetricsOverlay;
+    private final float[] mESenseReading = new float[6];
+    // Packet followed by the receive time, encoded in place for every notification.
+    private final ByteBuffer mESenseRecord = ByteBuffer.allocate(ESENSE_RECORD_SIZE);
+    private final Handler mHandler = new Handler();
+
+    // Refreshes the metrics overlay at a fixed rate rather than per sample or per frame.
+    private final Runnable mMetricsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            String metrics = getString(R.string.plot_metrics,
+                    mESensePlot.getLastDrawNanos() / 1e6, mESensePlot.getDroppedFrames(),
+                    mPhonePlot.getLastDrawNanos() / 1e6, mPhonePlot.getDroppedFrames());
+            long offered = mMotionTrigger.getBytesOffered();
+            if (offered > 0) {
+                long persisted = mMotionTrigger.getBytesPersisted();
+                metrics += getString(R.string.trigger_metrics,
+                        100.0 * (offered - persisted) / offered, persisted / 1024,
+                        offered / 1024, mMotionTrigger.getDetectorNanosPerSample());
+            }
+            mMetricsOverlay.setText(metrics);
+            mHandler.postDelayed(this, METRICS_UPDATE_INTERVAL_MILLIS);
+        }
+    };
+
     private BluetoothLeService mBluetoothLeService;
     private BluetoothGattCharacteristic mNotifyCharacteristic;
     private BluetoothGattCharacteristic mSamplingCharacteristic;
 
     private SensorManager sensorManager;
-    private final float[] accelerometerReading = new float[3];
-    private final float[] magnetometerReading = new float[3];
-    private final float[] gyroscopeReading = new float[3];
+    private final SensorSourceRegistry mSensorSources = new SensorSourceRegistry();
+    // Phone sensors recorded by the current session.
+    private final List<SensorSource> mRecordedSources = new ArrayList<>();
+    private Button mSensorsButton;
 
     private ByteArrayOutputStream mESenseImuByteArrayOutputStream;
-    private ByteArrayOutputStream mAccelerometerByteArrayOutputStream;
-    private ByteArrayOutputStream mMagnetometerByteArrayOutputStream;
-    private ByteArrayOutputStream mGyroscopeByteArrayOutputStream;
+
+    private Switch mRollupSwitch;
+    private Button mDumpButton;
+    private boolean mRollupMode;
+    private long mSessionStartMillis;
+    private RollupStage mESenseImuRollup;
+
+    private Switch mTriggeredSwitch;
+    private boolean mTriggeredMode;
+    private MotionTrigger mMotionTrigger;
+    private TriggeredCapture mESenseImuCapture;
+
+    private SessionUploader mSessionUploader;
+
+    private SessionCatalog mSessionCatalog;
+    private HandlerThread mCatalogThread;
+    private Handler mCatalogHandler;
+    private long mESenseSamples;
+    private long mESenseLost;
+    private int mLastESensePacketIndex = -1;
+
+    // Writes the running counts of the current session to the catalog while recording.
+    private final Runnable mCatalogUpdater = new Runnable() {
+        @Override
+        public void run() {
+            postCatalogProgress();
+            mHandler.postDelayed(this, CATALOG_UPDATE_INTERVAL_MILLIS);
+        }
+    };
+
+    private final SessionUploader.Listener mUploadListener = new SessionUploader.Listener() {
+        @Override
+        public void onSessionUploaded(String session) {
+            Log.i(TAG, "Session " + session + " uploaded.");
+            postExportStatus(Long.parseLong(session), SessionCatalog.EXPORT_UPLOADED);
+        }
+
+        @Override
+        public void onSessionFailed(String session, IOException e) {
+            Log.e(TAG, "Upload of session " + session + " failed", e);
+            postExportStatus(Long.parseLong(session), SessionCatalog.EXPORT_FAILED);
+        }
+    };
 
     // Code to manage Service lifecycle.
     private final ServiceConnection mServiceConnection = new ServiceConnection() {
@@ -115,9 +215,25 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 writeCharacteristics();
             } else if (BluetoothLeService.ACTION_DATA_AVAILABLE.equals(action)) {
                 byte[] values = intent.getByteArrayExtra(BluetoothLeService.EXTRA_DATA);
-                byte[] timestamp = long2ByteArray(System.currentTimeMillis());
-                mESenseImuByteArrayOutputStream.write(ArrayUtils.addAll(values, timestamp),
-                        0, values.length + timestamp.length);
+                long now = System.currentTimeMillis();
+                mESenseRecord.clear();
+                mESenseRecord.put(values, 0, ESENSE_PACKET_SIZE);
+                mESenseRecord.putLong(now);
+                // The second byte of every eSense packet is a wrapping packet counter.
+                int packetIndex = values[1] & 0xff;
+                if (mLastESensePacketIndex >= 0) {
+                    mESenseLost += (packetIndex - mLastESensePacketIndex - 1) & 0xff;
+                }
+                mLastESensePacketIndex = packetIndex;
+                for (int i = 0; i < mESenseReading.length; i++) {
+                    mESenseReading[i] = (values[4 + 2 * i] << 8) | (values[5 + 2 * i] & 0x00ff);
+                }
+                if (mTriggeredMode) {
+                    mMotionTrigger.onAcceleration(ESENSE_MOTION_DETECTOR, now,
+                            mESenseReading[3], mESenseReading[4], mESenseReading[5]);
+                }
+                recordESenseSample(now, mESenseRecord.array());
+                mESensePlot.addSample(now, mESenseReading, 0, mESenseReading.length);
                 Log.d(TAG, ((values[4] << 8) | (values[5] & 0x00ff)) + " "
                         + ((values[6] << 8) | (values[7] & 0x00ff)) + " "
                         + ((values[8] << 8) | (values[9] & 0x00ff)) + " "
@@ -142,24 +258,34 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         final boolean result = mBluetoothLeService.connect(
                                 ESenseGattAttributes.DEVICE_ADDRESS);
                         Log.d(TAG, "Connect request result=" + result);
+                        startSession();
                         registerListeners();
                     } else {
                         connectionState = STATE_DISCONNECTED;
                         updateConnectionState(R.string.disconnected);
                         unregisterListeners();
+                        mHandler.removeCallbacks(mCatalogUpdater);
+                        postCatalogProgress();
+                        mTriggeredMode = false;
+                        mTriggeredSwitch.setEnabled(true);
+                        mSensorsButton.setEnabled(true);
+                        if (mRollupMode) {
+                            stopRollupSession();
+                            exportSession(mSessionStartMillis);
+                            return;
+                        }
 
                         Log.d(TAG, "Save byte arrays to external storage.");
-                        long time = System.currentTimeMillis();
+                        // Named after the session start, like the session's rollup files.
+                        long time = mSessionStartMillis;
                         File path = Environment.getExternalStoragePublicDirectory(
                                 Environment.DIRECTORY_DOWNLOADS);
                         File file = new File(path, time + "_esense_imu_readings");
                         writeByteArrayToExternalStorage(file, mESenseImuByteArrayOutputStream);
-                        file = new File(path, time + "_accelerometer_readings" + time);
-                        writeByteArrayToExternalStorage(file, mAccelerometerByteArrayOutputStream);
-                        file = new File(path, time + "_gyroscope_readings" + time);
-                        writeByteArrayToExternalStorage(file, mGyroscopeByteArrayOutputStream);
-                        file = new File(path, time + "_magnetometer_readings" + time);
-                        writeByteArrayToExternalStorage(file, mMagnetometerByteArrayOutputStream);
+                        for (SensorSource source : mRecordedSources) {
+                            source.save(path, time);
+                        }
+                        exportSession(time);
                     }
                 }
             }
@@ -167,12 +293,59 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         // Sets up UI reference.
         mConnectionState = findViewById(R.id.connection_state);
+        mMetricsOverlay = findViewById(R.id.metrics_overlay);
+        mESensePlot = findViewById(R.id.esense_plot);
+        mESensePlot.setChannelCount(mESenseReading.length);
+        mPhonePlot = findViewById(R.id.phone_plot);
+        mPhonePlot.setChannelCount(6);
+        // Accelerometer and gyroscope share the phone plot and feed the motion trigger.
+        mSensorSources.get(Sensor.TYPE_ACCELEROMETER).setPlotChannel(0);
+        mSensorSources.get(Sensor.TYPE_ACCELEROMETER).setMotionDetector(PHONE_MOTION_DETECTOR);
+        mSensorSources.get(Sensor.TYPE_GYROSCOPE).setPlotChannel(3);
+        mRollupSwitch = findViewById(R.id.rollup_switch);
+        mTriggeredSwitch = findViewById(R.id.triggered_switch);
+        mDumpButton = findViewById(R.id.dump_button);
+        mDumpButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                dumpRollupRings();
+            }
+        });
+        mSensorsButton = findViewById(R.id.sensors_button);
+        mSensorsButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                showSensorSelection();
+            }
+        });
 
         // Create an output stream in which the data is written into a byte array.
         mESenseImuByteArrayOutputStream = new ByteArrayOutputStream();
-        mAccelerometerByteArrayOutputStream = new ByteArrayOutputStream();
-        mGyroscopeByteArrayOutputStream = new ByteArrayOutputStream();
-        mMagnetometerByteArrayOutputStream = new ByteArrayOutputStream();
+
+        // Rollup stages are allocated once and reused by every rollup mode session. Phone
+        // sensor sources allocate their own on first use.
+        mESenseImuRollup = new RollupStage(ESENSE_STREAM, ESENSE_AXES, ESENSE_RECORD_SIZE,
+                ROLLUP_RING_MINUTES * 60 * 1000L, ESENSE_MAX_RATE_HZ);
+
+        // One trigger shared by all streams, fed by the eSense and phone accelerometers.
+        mMotionTrigger = new MotionTrigger(
+                getResources().getInteger(R.integer.trigger_pre_roll_millis),
+                getResources().getInteger(R.integer.trigger_post_roll_millis),
+                new MotionDetector(MOTION_ENTER_RATIO, MOTION_EXIT_RATIO, MOTION_BASELINE_ALPHA),
+                new MotionDetector(MOTION_ENTER_RATIO, MOTION_EXIT_RATIO, MOTION_BASELINE_ALPHA));
+        mESenseImuCapture = new TriggeredCapture(mMotionTrigger, ESENSE_RECORD_SIZE,
+                ESENSE_MAX_RATE_HZ);
+
+        // The catalog is only touched from its own thread.
+        mSessionCatalog = new SessionCatalog(this);
+        mCatalogThread = new HandlerThread("SessionCatalog");
+        mCatalogThread.start();
+        mCatalogHandler = new Handler(mCatalogThread.getLooper());
+
+        String uploadEndpoint = getString(R.string.upload_endpoint);
+        if (!uploadEndpoint.isEmpty()) {
+            mSessionUploader = new SessionUploader(uploadEndpoint,
+                    SessionUploader.DEFAULT_CHUNK_SIZE, UPLOAD_CONCURRENCY);
+            resumePendingUploads();
+        }
 
         // Use this check to determine whether BLE is supported on the device.  Then you can
         // selectively disable BLE-related features.
@@ -216,28 +389,271 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         // You must implement this callback in your code.
     }
 
-    // Get readings from accelerometer and magnetometer. To simplify calculations,
-    // consider storing these readings as unit vectors.
+    // Dispatches through the source table, so every recorded sensor takes the same path.
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            System.arraycopy(event.values, 0, accelerometerReading,
-                    0, accelerometerReading.length);
-            byte[] b = floatArray2ByteArray(accelerometerReading);
-            mAccelerometerByteArrayOutputStream.write(b, 0, b.length);
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            System.arraycopy(event.values, 0, magnetometerReading,
-                    0, magnetometerReading.length);
-            byte[] b = floatArray2ByteArray(magnetometerReading);
-            mMagnetometerByteArrayOutputStream.write(b, 0, b.length);
-        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            System.arraycopy(event.values, 0, gyroscopeReading,
-                    0, gyroscopeReading.length);
-            byte[] b = floatArray2ByteArray(gyroscopeReading);
-            mGyroscopeByteArrayOutputStream.write(b, 0, b.length);
+        SensorSource source = mSensorSources.get(event.sensor.getType());
+        if (source == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        float[] values = source.read(event.values);
+        if (mTriggeredMode && source.getMotionDetector() >= 0) {
+            mMotionTrigger.onAcceleration(source.getMotionDetector(), now,
+                    values[0], values[1], values[2]);
+        }
+        source.record(now);
+        if (source.getPlotChannel() >= 0) {
+            mPhonePlot.addSample(now, values, source.getPlotChannel(),
+                    Math.min(values.length, 3));
+        }
+    }
+
+    // In rollup mode full-rate records only go to the stage's ring; otherwise they are kept
+    // in memory until the session is saved, in triggered mode only around detected motion.
+    private void recordESenseSample(long time, byte[] record) {
+        mESenseSamples++;
+        if (mRollupMode) {
+            mESenseImuRollup.add(time, mESenseReading, record, 0);
+        } else if (mTriggeredMode) {
+            mESenseImuCapture.add(time, record, mESenseImuByteArrayOutputStream);
+        } else {
+            mESenseImuByteArrayOutputStream.write(record, 0, record.length);
         }
     }
 
+    private void startSession() {
+        mSessionStartMillis = System.currentTimeMillis();
+        // Keep uploads off the storage while recording.
+        if (mSessionUploader != null) {
+            mSessionUploader.pause();
+        }
+        mESenseSamples = 0;
+        mESenseLost = 0;
+        mLastESensePacketIndex = -1;
+        mRollupMode = mRollupSwitch.isChecked();
+        mRollupSwitch.setEnabled(false);
+        // Rollup mode already bounds the full-rate data, so triggering only applies without it.
+        mTriggeredMode = mTriggeredSwitch.isChecked() && !mRollupMode;
+        mTriggeredSwitch.setEnabled(false);
+        mMotionTrigger.reset();
+        mESenseImuCapture.reset();
+        mSensorsButton.setEnabled(false);
+
+        mRecordedSources.clear();
+        for (String name : getRecordedSensorNames()) {
+            SensorSource source = mSensorSources.get(name);
+            if (source != null && sensorManager.getDefaultSensor(source.getType()) != null) {
+                mRecordedSources.add(source);
+            }
+        }
+        File path = Environment.getExternalStoragePublicDirectory(
+                Environment.DIRECTORY_DOWNLOADS);
+        long ringMillis = ROLLUP_RING_MINUTES * 60 * 1000L;
+        for (SensorSource source : mRecordedSources) {
+            if (mRollupMode) {
+                source.startRollup(path, mSessionStartMillis, ringMillis,
+                        PHONE_SENSOR_MAX_RATE_HZ);
+            } else if (mTriggeredMode) {
+                source.startTriggered(mMotionTrigger, PHONE_SENSOR_MAX_RATE_HZ);
+            } else {
+                source.start();
+            }
+        }
+        if (mRollupMode) {
+            mESenseImuRollup.start(path, mSessionStartMillis);
+            mDumpButton.setEnabled(true);
+        }
+
+        final long session = mSessionStartMillis;
+        final String profile = "mode=" + (mRollupMode ? "rollup" : mTriggeredMode ? "triggered"
+                : "raw") + ";esense_rate_hz=" + ESENSE_MAX_RATE_HZ
+                + ";phone_delay=" + SensorManager.SENSOR_DELAY_NORMAL
+                + ";sensors=" + TextUtils.join(",", getRecordedStreamNames());
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionCatalog.beginSession(session, ESenseGattAttributes.DEVICE_ADDRESS,
+                        profile);
+            }
+        });
+        mHandler.postDelayed(mCatalogUpdater, CATALOG_UPDATE_INTERVAL_MILLIS);
+    }
+
+    private void postCatalogProgress() {
+        final long session = mSessionStartMillis;
+        final long now = System.currentTimeMillis();
+        final String[] streams = new String[mRecordedSources.size() + 1];
+        final long[] samples = new long[streams.length];
+        final long[] lost = new long[streams.length];
+        streams[0] = ESENSE_STREAM;
+        samples[0] = mESenseSamples;
+        lost[0] = mESenseLost;
+        for (int i = 0; i < mRecordedSources.size(); i++) {
+            streams[i + 1] = mRecordedSources.get(i).getName();
+            samples[i + 1] = mRecordedSources.get(i).getSampleCount();
+        }
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionCatalog.updateProgress(session, now, streams, samples, lost);
+            }
+        });
+    }
+
+    private void postExportStatus(final long session, final int status) {
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionCatalog.setExportStatus(session, status);
+            }
+        });
+    }
+
+    // Re-queues sessions whose upload did not complete before the app last stopped. The
+    // uploader resumes each file after its last acknowledged chunk.
+    private void resumePendingUploads() {
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<SessionCatalog.Session> sessions = new ArrayList<>();
+                sessions.addAll(mSessionCatalog.findSessionsByExportStatus(
+                        SessionCatalog.EXPORT_PENDING));
+                sessions.addAll(mSessionCatalog.findSessionsByExportStatus(
+                        SessionCatalog.EXPORT_FAILED));
+                for (SessionCatalog.Session session : sessions) {
+                    List<File> files = mSessionCatalog.getFiles(session.id);
+                    if (!files.isEmpty()) {
+                        mSessionUploader.upload(Long.toString(session.id), files,
+                                mUploadListener);
+                    }
+                }
+            }
+        });
+    }
+
+    private void stopRollupSession() {
+        Log.d(TAG, "Close rollup files.");
+        mESenseImuRollup.stop();
+        for (SensorSource source : mRecordedSources) {
+            source.stop();
+        }
+        mRollupMode = false;
+        mRollupSwitch.setEnabled(true);
+        mDumpButton.setEnabled(false);
+    }
+
+    // Records the files of the session in the catalog and queues them for upload, then lets
+    // queued uploads proceed.
+    private void exportSession(final long sessionMillis) {
+        final String prefix = sessionMillis + "_";
+        File path = Environment.getExternalStoragePublicDirectory(
+                Environment.DIRECTORY_DOWNLOADS);
+        File[] files = path.listFiles();
+        final List<File> sessionFiles = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().startsWith(prefix)) {
+                    sessionFiles.add(file);
+                }
+            }
+        }
+        final boolean upload = mSessionUploader != null && !sessionFiles.isEmpty();
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionCatalog.addFiles(sessionMillis, sessionFiles);
+                if (upload) {
+                    mSessionCatalog.setExportStatus(sessionMillis,
+                            SessionCatalog.EXPORT_PENDING);
+                }
+            }
+        });
+        if (upload) {
+            mSessionUploader.upload(Long.toString(sessionMillis), sessionFiles,
+                    mUploadListener);
+        }
+        if (mSessionUploader != null) {
+            mSessionUploader.resume();
+        }
+    }
+
+    // Saves the full-rate history of every stream as <session>_<stream>_dump_<time>, so dumps
+    // are exported, catalogued and converted with the rest of the session.
+    private void dumpRollupRings() {
+        if (!mRollupMode) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        File path = Environment.getExternalStoragePublicDirectory(
+                Environment.DIRECTORY_DOWNLOADS);
+        mESenseImuRollup.dumpRing(new File(path, mSessionStartMillis + "_" + ESENSE_STREAM
+                + "_dump_" + time), time);
+        for (SensorSource source : mRecordedSources) {
+            source.dumpRing(path, mSessionStartMillis, time);
+        }
+        Toast.makeText(this, getString(R.string.ring_dumped, ROLLUP_RING_MINUTES),
+                Toast.LENGTH_SHORT).show();
+    }
+
+    private List<String> getRecordedSensorNames() {
+        String defaultNames = TextUtils.join(",",
+                getResources().getStringArray(R.array.default_recorded_sensors));
+        String names = getPreferences(Context.MODE_PRIVATE)
+                .getString(PREF_RECORDED_SENSORS, defaultNames);
+        return names.isEmpty() ? new ArrayList<String>() : Arrays.asList(names.split(","));
+    }
+
+    private List<String> getRecordedStreamNames() {
+        List<String> names = new ArrayList<>();
+        for (SensorSource source : mRecordedSources) {
+            names.add(source.getName());
+        }
+        return names;
+    }
+
+    // Lets the user pick which of the phone's sensors the next sessions record.
+    private void showSensorSelection() {
+        final List<String> available = new ArrayList<>();
+        for (SensorSource source : mSensorSources.getSources()) {
+            if (sensorManager.getDefaultSensor(source.getType()) != null) {
+                available.add(source.getName());
+            }
+        }
+        List<String> recorded = getRecordedSensorNames();
+        final boolean[] checked = new boolean[available.size()];
+        for (int i = 0; i < checked.length; i++) {
+            checked[i] = recorded.contains(available.get(i));
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.title_recorded_sensors)
+                .setMultiChoiceItems(available.toArray(new String[available.size()]), checked,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which,
+                                                boolean isChecked) {
+                                checked[which] = isChecked;
+                            }
+                        })
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        List<String> selected = new ArrayList<>();
+                        for (int i = 0; i < checked.length; i++) {
+                            if (checked[i]) {
+                                selected.add(available.get(i));
+                            }
+                        }
+                        SharedPreferences.Editor editor =
+                                getPreferences(Context.MODE_PRIVATE).edit();
+                        editor.putString(PREF_RECORDED_SENSORS, TextUtils.join(",", selected));
+                        editor.apply();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         // User chose not to enable Bluetooth.
@@ -252,12 +668,14 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     protected void onResume() {
         super.onResume();
         registerReceiver(mGattUpdateReceiver, makeGattUpdateIntentFilter());
+        mHandler.post(mMetricsUpdater);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         unregisterReceiver(mGattUpdateReceiver);
+        mHandler.removeCallbacks(mMetricsUpdater);
         // Don't receive any more updates from either sensor.
         unregisterListeners();
     }
@@ -267,6 +685,19 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         super.onDestroy();
         unbindService(mServiceConnection);
         mBluetoothLeService = null;
+        // Stop the periodic updaters before the catalog thread they post to goes away.
+        mHandler.removeCallbacks(mCatalogUpdater);
+        mHandler.removeCallbacks(mMetricsUpdater);
+        if (mSessionUploader != null) {
+            mSessionUploader.shutdown();
+        }
+        mCatalogHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSessionCatalog.close();
+            }
+        });
+        mCatalogThread.quitSafely();
     }
 
     private void updateConnectionState(final int resourceId) {
@@ -334,20 +765,12 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     private void registerListeners() {
-        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        if (accelerometer != null) {
-            sensorManager.registerListener(this, accelerometer,
-                    SensorManager.SENSOR_DELAY_NORMAL, SensorManager.SENSOR_DELAY_UI);
-        }
-        Sensor magneticField = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        if (magneticField != null) {
-            sensorManager.registerListener(this, magneticField,
-                    SensorManager.SENSOR_DELAY_NORMAL, SensorManager.SENSOR_DELAY_UI);
-        }
-        Sensor gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-        if (gyroscope != null) {
-            sensorManager.registerListener(this, gyroscope,
-                    SensorManager.SENSOR_DELAY_NORMAL, SensorManager.SENSOR_DELAY_UI);
+        for (SensorSource source : mRecordedSources) {
+            Sensor sensor = sensorManager.getDefaultSensor(source.getType());
+            if (sensor != null) {
+                sensorManager.registerListener(this, sensor,
+                        SensorManager.SENSOR_DELAY_NORMAL, SensorManager.SENSOR_DELAY_UI);
+            }
         }
     }
 
@@ -370,17 +793,4 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             return false;
         }
     }
-
-    private static byte [] long2ByteArray (long value) {
-        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
-    }
-
-    private static byte[] floatArray2ByteArray(float[] values){
-        ByteBuffer buffer = ByteBuffer.allocate(Float.BYTES * values.length + Long.BYTES);
-        for (float value : values){
-            buffer.putFloat(value);
-        }
-        buffer.putLong(System.currentTimeMillis());
-        return buffer.array();
-    }
 }
@@ -0,0 +1,105 @@
+package com.example.imudatasampler;
+
+import java.util.Arrays;
+
+/**
+ * Reduces an arbitrary-rate multi-channel sample stream to a fixed number of time columns,
+ * keeping the minimum and maximum of every channel within each column. The plot therefore
+ * draws the same number of points per frame regardless of the sensor sampling rate, while
+ * spikes shorter than a column remain visible.
+ *
+ * Columns live in a ring indexed by {@code timeMillis / columnMillis}, so adding a sample is a
+ * constant-time update that never allocates and never waits for the renderer.
+ */
+public class MinMaxDecimator {
+    private final int mChannelCount;
+    private final int mColumnCount;
+    private final long mColumnMillis;
+
+    // Indexed by column * mChannelCount + channel.
+    private final float[] mMin;
+    private final float[] mMax;
+    // Absolute bucket number currently held by each ring slot.
+    private final long[] mBucket;
+    private long mNewestBucket = Long.MIN_VALUE;
+
+    public MinMaxDecimator(int channelCount, int columnCount, long windowMillis) {
+        mChannelCount = channelCount;
+        mColumnCount = columnCount;
+        mColumnMillis = Math.max(1, windowMillis / columnCount);
+        mMin = new float[channelCount * columnCount];
+        mMax = new float[channelCount * columnCount];
+        mBucket = new long[columnCount];
+        Arrays.fill(mBucket, Long.MIN_VALUE);
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getColumnCount() {
+        return mColumnCount;
+    }
+
+    /**
+     * Adds {@code count} channel values starting at {@code firstChannel}. Streams that arrive
+     * separately (e.g. phone accelerometer and gyroscope) can share one decimator this way.
+     */
+    public void add(long timeMillis, float[] values, int firstChannel, int count) {
+        final long bucket = timeMillis / mColumnMillis;
+        if (mNewestBucket != Long.MIN_VALUE && bucket <= mNewestBucket - mColumnCount) {
+            // Older than the visible window.
+            return;
+        }
+        final int slot = (int) (bucket % mColumnCount);
+        final int base = slot * mChannelCount;
+        if (mBucket[slot] != bucket) {
+            mBucket[slot] = bucket;
+            Arrays.fill(mMin, base, base + mChannelCount, Float.NaN);
+            Arrays.fill(mMax, base, base + mChannelCount, Float.NaN);
+        }
+        for (int i = 0; i < count; i++) {
+            final int index = base + firstChannel + i;
+            final float value = values[i];
+            if (Float.isNaN(mMin[index]) || value < mMin[index]) {
+                mMin[index] = value;
+            }
+            if (Float.isNaN(mMax[index]) || value > mMax[index]) {
+                mMax[index] = value;
+            }
+        }
+        if (bucket > mNewestBucket) {
+            mNewestBucket = bucket;
+        }
+    }
+
+    /**
+     * Copies one channel, oldest column first, into the given arrays which must hold at least
+     * {@link #getColumnCount()} entries. Columns without samples are reported as NaN.
+     *
+     * @return Return false if no sample has been added yet.
+     */
+    public boolean copyChannel(int channel, float[] outMin, float[] outMax) {
+        if (mNewestBucket == Long.MIN_VALUE) {
+            return false;
+        }
+        final long oldest = mNewestBucket - mColumnCount + 1;
+        for (int i = 0; i < mColumnCount; i++) {
+            final long bucket = oldest + i;
+            final int slot = (int) (((bucket % mColumnCount) + mColumnCount) % mColumnCount);
+            if (mBucket[slot] == bucket) {
+                outMin[i] = mMin[slot * mChannelCount + channel];
+                outMax[i] = mMax[slot * mChannelCount + channel];
+            } else {
+                outMin[i] = Float.NaN;
+                outMax[i] = Float.NaN;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(mBucket, Long.MIN_VALUE);
+        mNewestBucket = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.imudatasampler;
+
+/**
+ * Cheap always-on motion detector for an accelerometer stream. It tracks the resting
+ * magnitude (gravity, in whatever unit the sensor reports) with a slow moving average and
+ * reports motion while the magnitude departs from it, with hysteresis so the state does not
+ * chatter around the threshold.
+ *
+ * Thresholds are fractions of the resting magnitude, which lets the same detector run on the
+ * phone accelerometer in m/s^2 and on raw eSense accelerometer counts.
+ *
+ * The baseline is seeded from the average of the first few samples and keeps adapting, much
+ * more slowly, while in motion, so a session that starts mid-motion cannot latch the detector
+ * in the moving state.
+ */
+public class MotionDetector {
+    private static final int WARM_UP_SAMPLES = 16;
+    // Baseline learning rate in motion, relative to the resting rate.
+    private static final float MOVING_ALPHA_FACTOR = 1 / 8f;
+
+    private final float mEnterRatio;
+    private final float mExitRatio;
+    private final float mBaselineAlpha;
+
+    private float mBaseline = Float.NaN;
+    private float mWarmUpSum;
+    private int mWarmUpCount;
+    private boolean mMoving;
+
+    /**
+     * @param enterRatio Relative deviation from rest at which motion starts.
+     * @param exitRatio Relative deviation below which motion ends; smaller than enterRatio.
+     * @param baselineAlpha Weight of each resting sample in the baseline average.
+     */
+    public MotionDetector(float enterRatio, float exitRatio, float baselineAlpha) {
+        mEnterRatio = enterRatio;
+        mExitRatio = exitRatio;
+        mBaselineAlpha = baselineAlpha;
+    }
+
+    /**
+     * @return Return true while the stream is considered in motion.
+     */
+    public boolean update(float x, float y, float z) {
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        if (mWarmUpCount < WARM_UP_SAMPLES) {
+            mWarmUpSum += magnitude;
+            mBaseline = mWarmUpSum / ++mWarmUpCount;
+            return false;
+        }
+        float deviation = Math.abs(magnitude - mBaseline);
+        if (mMoving) {
+            mMoving = deviation > mExitRatio * mBaseline;
+        } else {
+            mMoving = deviation > mEnterRatio * mBaseline;
+        }
+        // Learn the resting magnitude mostly at rest, but never stop learning it.
+        float alpha = mMoving ? mBaselineAlpha * MOVING_ALPHA_FACTOR : mBaselineAlpha;
+        mBaseline += alpha * (magnitude - mBaseline);
+        return mMoving;
+    }
+
+    public boolean isMoving() {
+        return mMoving;
+    }
+
+    public void reset() {
+        mBaseline = Float.NaN;
+        mWarmUpSum = 0;
+        mWarmUpCount = 0;
+        mMoving = false;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.imudatasampler;
+
+/**
+ * Decides when a motion-triggered session persists data. Any of its detectors reporting
+ * motion opens a capture window that stays open for the post-roll period after motion ends;
+ * each stream's {@link TriggeredCapture} adds the pre-roll history when a window opens.
+ *
+ * Also accounts for the bytes offered and persisted by all streams and for the time spent in
+ * the detectors, so the savings and the detector cost can be shown while recording.
+ */
+public class MotionTrigger {
+    private final long mPreRollMillis;
+    private final long mPostRollMillis;
+    private final MotionDetector[] mDetectors;
+
+    private long mCaptureUntilMillis = Long.MIN_VALUE;
+
+    private long mDetectorNanos;
+    private long mDetectorSamples;
+    private long mBytesOffered;
+    private long mBytesPersisted;
+
+    public MotionTrigger(long preRollMillis, long postRollMillis, MotionDetector... detectors) {
+        mPreRollMillis = preRollMillis;
+        mPostRollMillis = postRollMillis;
+        mDetectors = detectors;
+    }
+
+    public long getPreRollMillis() {
+        return mPreRollMillis;
+    }
+
+    /**
+     * Feeds an accelerometer sample to the detector at {@code detector} index.
+     */
+    public void onAcceleration(int detector, long timeMillis, float x, float y, float z) {
+        long start = System.nanoTime();
+        boolean moving = mDetectors[detector].update(x, y, z);
+        mDetectorNanos += System.nanoTime() - start;
+        mDetectorSamples++;
+        if (moving) {
+            mCaptureUntilMillis = timeMillis + mPostRollMillis;
+        }
+    }
+
+    public boolean isCapturing(long timeMillis) {
+        return timeMillis <= mCaptureUntilMillis;
+    }
+
+    void countOffered(int bytes) {
+        mBytesOffered += bytes;
+    }
+
+    void countPersisted(int bytes) {
+        mBytesPersisted += bytes;
+    }
+
+    public long getBytesOffered() {
+        return mBytesOffered;
+    }
+
+    public long getBytesPersisted() {
+        return mBytesPersisted;
+    }
+
+    /**
+     * @return Return the mean time spent per detector update, in nanoseconds.
+     */
+    public long getDetectorNanosPerSample() {
+        return mDetectorSamples == 0 ? 0 : mDetectorNanos / mDetectorSamples;
+    }
+
+    public void reset() {
+        for (MotionDetector detector : mDetectors) {
+            detector.reset();
+        }
+        mCaptureUntilMillis = Long.MIN_VALUE;
+        mDetectorNanos = 0;
+        mDetectorSamples = 0;
+        mBytesOffered = 0;
+        mBytesPersisted = 0;
+    }
+}
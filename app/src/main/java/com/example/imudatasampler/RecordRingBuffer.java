@@ -0,0 +1,74 @@
+package com.example.imudatasampler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fixed-capacity ring of fixed-size, timestamped records. Once full, each new record
+ * overwrites the oldest one, so the ring always holds the most recent {@code capacity} records
+ * without allocating after construction.
+ */
+public class RecordRingBuffer {
+    private final int mRecordSize;
+    private final int mCapacity;
+    private final byte[] mBuffer;
+    private final long[] mTimes;
+    // Index of the slot the next record is written to.
+    private int mHead;
+    private int mCount;
+
+    public RecordRingBuffer(int recordSize, int capacity) {
+        mRecordSize = recordSize;
+        mCapacity = capacity;
+        mBuffer = new byte[recordSize * capacity];
+        mTimes = new long[capacity];
+    }
+
+    public int getRecordSize() {
+        return mRecordSize;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Copies one record of {@link #getRecordSize()} bytes into the ring.
+     */
+    public void put(byte[] record, int offset, long timeMillis) {
+        System.arraycopy(record, offset, mBuffer, mHead * mRecordSize, mRecordSize);
+        mTimes[mHead] = timeMillis;
+        mHead = (mHead + 1) % mCapacity;
+        if (mCount < mCapacity) {
+            mCount++;
+        }
+    }
+
+    /**
+     * Writes the held records stamped at or after {@code sinceMillis} to the stream, oldest
+     * first. The ring is left unchanged.
+     *
+     * @return Return the number of bytes written.
+     */
+    public int writeTo(OutputStream out, long sinceMillis) throws IOException {
+        int tail = (mHead - mCount + mCapacity) % mCapacity;
+        int skipped = 0;
+        while (skipped < mCount && mTimes[(tail + skipped) % mCapacity] < sinceMillis) {
+            skipped++;
+        }
+        int first = (tail + skipped) % mCapacity;
+        int count = mCount - skipped;
+        if (first + count <= mCapacity) {
+            out.write(mBuffer, first * mRecordSize, count * mRecordSize);
+        } else {
+            out.write(mBuffer, first * mRecordSize, (mCapacity - first) * mRecordSize);
+            out.write(mBuffer, 0, (first + count - mCapacity) * mRecordSize);
+        }
+        return count * mRecordSize;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mCount = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.imudatasampler;
+
+import com.example.imudatasampler.converter.StreamFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Incrementally reduces a sample stream to fixed-period buckets holding the sample count and
+ * the min, max, mean and RMS of every axis. Each completed bucket is written as one
+ * session format record from a preallocated buffer, so adding samples never allocates.
+ */
+public class RollupAggregator {
+    private final long mPeriodMillis;
+    private final int mAxisCount;
+    private final OutputStream mOut;
+
+    private final float[] mMin;
+    private final float[] mMax;
+    private final double[] mSum;
+    private final double[] mSumOfSquares;
+    private int mCount;
+    private long mBucketStart = Long.MIN_VALUE;
+
+    private final ByteBuffer mRecord;
+
+    public RollupAggregator(long periodMillis, int axisCount, OutputStream out) {
+        mPeriodMillis = periodMillis;
+        mAxisCount = axisCount;
+        mOut = out;
+        mMin = new float[axisCount];
+        mMax = new float[axisCount];
+        mSum = new double[axisCount];
+        mSumOfSquares = new double[axisCount];
+        mRecord = ByteBuffer.allocate(StreamFormat.sessionRecordSize(1 + 4 * axisCount));
+    }
+
+    /**
+     * Names of the record columns for the given axes: the sample count followed by
+     * min, max, mean and RMS of each axis.
+     */
+    public static String[] columnNames(String[] axisNames) {
+        String[] names = new String[1 + 4 * axisNames.length];
+        names[0] = "count";
+        for (int i = 0; i < axisNames.length; i++) {
+            names[1 + 4 * i] = axisNames[i] + "_min";
+            names[2 + 4 * i] = axisNames[i] + "_max";
+            names[3 + 4 * i] = axisNames[i] + "_mean";
+            names[4 + 4 * i] = axisNames[i] + "_rms";
+        }
+        return names;
+    }
+
+    /**
+     * @return Return true if the sample started a new bucket, the previous one being written.
+     */
+    public boolean add(long timeMillis, float[] values) throws IOException {
+        long bucketStart = timeMillis - timeMillis % mPeriodMillis;
+        boolean completed = false;
+        if (bucketStart != mBucketStart) {
+            completed = mCount > 0;
+            flush();
+            mBucketStart = bucketStart;
+        }
+        for (int i = 0; i < mAxisCount; i++) {
+            float value = values[i];
+            if (mCount == 0 || value < mMin[i]) mMin[i] = value;
+            if (mCount == 0 || value > mMax[i]) mMax[i] = value;
+            mSum[i] += value;
+            mSumOfSquares[i] += (double) value * value;
+        }
+        mCount++;
+        return completed;
+    }
+
+    /**
+     * Writes the current bucket, if it holds any sample, and starts an empty one.
+     */
+    public void flush() throws IOException {
+        if (mCount == 0) {
+            return;
+        }
+        mRecord.clear();
+        mRecord.putLong(mBucketStart);
+        mRecord.putFloat(mCount);
+        for (int i = 0; i < mAxisCount; i++) {
+            mRecord.putFloat(mMin[i]);
+            mRecord.putFloat(mMax[i]);
+            mRecord.putFloat((float) (mSum[i] / mCount));
+            mRecord.putFloat((float) Math.sqrt(mSumOfSquares[i] / mCount));
+            mSum[i] = 0;
+            mSumOfSquares[i] = 0;
+        }
+        mCount = 0;
+        mOut.write(mRecord.array(), 0, mRecord.position());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.imudatasampler;
+
+import android.util.Log;
+
+import com.example.imudatasampler.converter.StreamFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Optional recording stage for long sessions. Full-rate records of one stream are kept only
+ * in a bounded {@link RecordRingBuffer} covering the last few minutes, which can be dumped on
+ * demand, while 1 s and 1 min rollups of the whole session are persisted as they complete.
+ *
+ * The ring and aggregation buffers are allocated once; per-sample work is constant and
+ * allocation-free. Rollup files are flushed whenever a bucket of the coarsest period
+ * completes, so a crash loses at most that period.
+ */
+public class RollupStage {
+    private final static String TAG = RollupStage.class.getSimpleName();
+
+    private static final long[] PERIODS_MILLIS = {1000, 60 * 1000};
+    private static final String[] PERIOD_NAMES = {"1s", "1min"};
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+    private final String mStreamName;
+    private final String[] mAxisNames;
+    private final RecordRingBuffer mRing;
+    private final long mRingMillis;
+
+    private final DataOutputStream[] mRollupStreams = new DataOutputStream[PERIODS_MILLIS.length];
+    private final RollupAggregator[] mAggregators = new RollupAggregator[PERIODS_MILLIS.length];
+    private boolean mActive;
+
+    /**
+     * @param recordSize Size of the full-rate records kept in the ring.
+     * @param ringMillis Time span the ring must cover.
+     * @param maxRateHz Highest expected sampling rate, used to size the ring.
+     */
+    public RollupStage(String streamName, String[] axisNames, int recordSize,
+                       long ringMillis, int maxRateHz) {
+        mStreamName = streamName;
+        mAxisNames = axisNames;
+        mRing = new RecordRingBuffer(recordSize, (int) (ringMillis * maxRateHz / 1000));
+        mRingMillis = ringMillis;
+    }
+
+    /**
+     * Clears the ring and opens the rollup files of a new session in {@code dir}.
+     */
+    public void start(File dir, long sessionMillis) {
+        mRing.clear();
+        try {
+            String[] columns = RollupAggregator.columnNames(mAxisNames);
+            for (int i = 0; i < PERIODS_MILLIS.length; i++) {
+                File file = new File(dir, sessionMillis + "_" + mStreamName + "_rollup_"
+                        + PERIOD_NAMES[i]);
+                mRollupStreams[i] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(file), WRITE_BUFFER_SIZE));
+                // Named after the resolution so converted rollups get distinct columns.
+                StreamFormat.writeSessionHeader(mRollupStreams[i],
+                        mStreamName + "_rollup_" + PERIOD_NAMES[i], columns);
+                mAggregators[i] = new RollupAggregator(PERIODS_MILLIS[i], mAxisNames.length,
+                        mRollupStreams[i]);
+            }
+            mActive = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open rollup files for " + mStreamName, e);
+            stop();
+        }
+    }
+
+    public void add(long timeMillis, float[] values, byte[] record, int recordOffset) {
+        if (record.length - recordOffset >= mRing.getRecordSize()) {
+            mRing.put(record, recordOffset, timeMillis);
+        }
+        if (!mActive) {
+            return;
+        }
+        try {
+            boolean coarsestCompleted = false;
+            for (RollupAggregator aggregator : mAggregators) {
+                // The last aggregator has the coarsest period.
+                coarsestCompleted = aggregator.add(timeMillis, values);
+            }
+            if (coarsestCompleted) {
+                for (DataOutputStream stream : mRollupStreams) {
+                    stream.flush();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write rollups for " + mStreamName, e);
+            stop();
+        }
+    }
+
+    /**
+     * Writes the full-rate records of the last ring period before {@code nowMillis} to
+     * {@code file}.
+     */
+    public boolean dumpRing(File file, long nowMillis) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            writeRing(out, nowMillis);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to dump " + mStreamName + " ring", e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the full-rate records of the last ring period before {@code nowMillis}.
+     */
+    public void writeRing(OutputStream out, long nowMillis) throws IOException {
+        mRing.writeTo(out, nowMillis - mRingMillis);
+    }
+
+    /**
+     * Persists the partially filled buckets and closes the rollup files.
+     */
+    public void stop() {
+        mActive = false;
+        for (int i = 0; i < PERIODS_MILLIS.length; i++) {
+            try {
+                if (mAggregators[i] != null) {
+                    mAggregators[i].flush();
+                }
+                if (mRollupStreams[i] != null) {
+                    mRollupStreams[i].close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close " + mStreamName + " rollups", e);
+            }
+            mAggregators[i] = null;
+            mRollupStreams[i] = null;
+        }
+    }
+}
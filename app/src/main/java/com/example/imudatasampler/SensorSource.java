@@ -0,0 +1,223 @@
+package com.example.imudatasampler;
+
+import android.util.Log;
+
+import com.example.imudatasampler.converter.StreamFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One recorded phone sensor. Every source, whatever its type and axis count, goes through the
+ * same path: event values are copied into a preallocated array, encoded into a preallocated
+ * session format record, and the record is routed to the session stream, the rollup
+ * stage or the triggered capture depending on how the session was started. Nothing is
+ * allocated per event.
+ *
+ * Sources are driven from the UI thread, where the sensor listener is called.
+ */
+public class SensorSource {
+    private final static String TAG = SensorSource.class.getSimpleName();
+
+    private final int mType;
+    private final String mName;
+    private final String[] mAxisNames;
+
+    private final float[] mValues;
+    private final ByteBuffer mRecord;
+    private final byte[] mHeader;
+    private final ByteArrayOutputStream mStream = new ByteArrayOutputStream();
+
+    // Allocated the first time a session needs them and reused afterwards.
+    private RollupStage mRollup;
+    private TriggeredCapture mCapture;
+    private boolean mRollupActive;
+    private boolean mCaptureActive;
+
+    private int mPlotChannel = -1;
+    private int mMotionDetector = -1;
+    private long mSampleCount;
+
+    public SensorSource(int type, String name, String[] axisNames) {
+        mType = type;
+        mName = name;
+        mAxisNames = axisNames;
+        mValues = new float[axisNames.length];
+        mRecord = ByteBuffer.allocate(StreamFormat.sessionRecordSize(axisNames.length));
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try {
+            StreamFormat.writeSessionHeader(new DataOutputStream(header), name, axisNames);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw.
+        }
+        mHeader = header.toByteArray();
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String[] getAxisNames() {
+        return mAxisNames;
+    }
+
+    public int getRecordSize() {
+        return mRecord.capacity();
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Starts a session that keeps every record in memory until {@link #save(File, long)}.
+     */
+    public void start() {
+        resetSession();
+    }
+
+    /**
+     * Starts a rollup session whose rollup files are written to {@code dir}.
+     *
+     * @param ringMillis Time span of full-rate history kept for {@link #dumpRing(File, long, long)}.
+     * @param maxRateHz Highest expected sampling rate, used to size the ring.
+     */
+    public void startRollup(File dir, long session, long ringMillis, int maxRateHz) {
+        resetSession();
+        if (mRollup == null) {
+            mRollup = new RollupStage(mName, mAxisNames, getRecordSize(), ringMillis, maxRateHz);
+        }
+        mRollup.start(dir, session);
+        mRollupActive = true;
+    }
+
+    /**
+     * Starts a session that only keeps records around motion detected by {@code trigger}.
+     */
+    public void startTriggered(MotionTrigger trigger, int maxRateHz) {
+        resetSession();
+        if (mCapture == null) {
+            mCapture = new TriggeredCapture(trigger, getRecordSize(), maxRateHz);
+        }
+        mCapture.reset();
+        mCaptureActive = true;
+    }
+
+    /**
+     * Closes the rollup files of a rollup session. Other sessions end with
+     * {@link #save(File, long)}.
+     */
+    public void stop() {
+        if (mRollupActive) {
+            mRollup.stop();
+            mRollupActive = false;
+        }
+        mCaptureActive = false;
+    }
+
+    /**
+     * First channel of the phone plot this source draws to, or -1.
+     */
+    public int getPlotChannel() {
+        return mPlotChannel;
+    }
+
+    public void setPlotChannel(int plotChannel) {
+        mPlotChannel = plotChannel;
+    }
+
+    /**
+     * Index of the motion detector fed by this source, or -1.
+     */
+    public int getMotionDetector() {
+        return mMotionDetector;
+    }
+
+    public void setMotionDetector(int motionDetector) {
+        mMotionDetector = motionDetector;
+    }
+
+    /**
+     * Copies the event values into the source's value array, which is returned. Sensors
+     * reporting fewer values than the source has axes leave the remaining axes at zero.
+     */
+    public float[] read(float[] eventValues) {
+        int count = Math.min(eventValues.length, mValues.length);
+        System.arraycopy(eventValues, 0, mValues, 0, count);
+        for (int i = count; i < mValues.length; i++) {
+            mValues[i] = 0;
+        }
+        return mValues;
+    }
+
+    /**
+     * Encodes the values last {@link #read(float[])} and records them.
+     */
+    public void record(long timeMillis) {
+        mRecord.clear();
+        mRecord.putLong(timeMillis);
+        for (float value : mValues) {
+            mRecord.putFloat(value);
+        }
+        mSampleCount++;
+        byte[] record = mRecord.array();
+        if (mRollupActive) {
+            mRollup.add(timeMillis, mValues, record, 0);
+        } else if (mCaptureActive) {
+            mCapture.add(timeMillis, record, mStream);
+        } else {
+            mStream.write(record, 0, record.length);
+        }
+    }
+
+    /**
+     * Writes the recorded session stream to {@code <session>_<name>} in {@code dir}.
+     */
+    public boolean save(File dir, long session) {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, session + "_" + mName))) {
+            out.write(mHeader);
+            mStream.writeTo(out);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to save " + mName, e);
+            return false;
+        } finally {
+            mStream.reset();
+        }
+    }
+
+    /**
+     * Writes the rollup stage's full-rate history to {@code <session>_<name>_dump_<time>} in
+     * {@code dir}. The stream is named after the dump so several dumps convert side by side.
+     */
+    public boolean dumpRing(File dir, long session, long time) {
+        if (!mRollupActive) {
+            return false;
+        }
+        String dumpName = mName + "_dump_" + time;
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(dir, session + "_" + dumpName)))) {
+            StreamFormat.writeSessionHeader(out, dumpName, mAxisNames);
+            mRollup.writeRing(out, time);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to dump " + mName + " ring", e);
+            return false;
+        }
+    }
+
+    private void resetSession() {
+        stop();
+        mStream.reset();
+        mSampleCount = 0;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.imudatasampler;
+
+import android.hardware.Sensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The phone sensors the app knows how to record, each with its stream name and axis names.
+ * Sources live in a table indexed by sensor type, so dispatching a sensor event to its source
+ * is a single array lookup whatever the number of registered sensors.
+ */
+public class SensorSourceRegistry {
+    private static final String[] XYZ = {"x", "y", "z"};
+
+    private SensorSource[] mByType = new SensorSource[0];
+    private final List<SensorSource> mSources = new ArrayList<>();
+
+    /**
+     * Creates a registry holding the standard motion, position and environment sensors.
+     */
+    public SensorSourceRegistry() {
+        register(new SensorSource(Sensor.TYPE_ACCELEROMETER, "accelerometer", XYZ));
+        register(new SensorSource(Sensor.TYPE_GYROSCOPE, "gyroscope", XYZ));
+        register(new SensorSource(Sensor.TYPE_MAGNETIC_FIELD, "magnetometer", XYZ));
+        register(new SensorSource(Sensor.TYPE_LINEAR_ACCELERATION, "linear_acceleration",
+                XYZ));
+        register(new SensorSource(Sensor.TYPE_GRAVITY, "gravity", XYZ));
+        register(new SensorSource(Sensor.TYPE_ACCELEROMETER_UNCALIBRATED,
+                "accelerometer_uncalibrated",
+                new String[]{"x", "y", "z", "bias_x", "bias_y", "bias_z"}));
+        register(new SensorSource(Sensor.TYPE_GYROSCOPE_UNCALIBRATED, "gyroscope_uncalibrated",
+                new String[]{"x", "y", "z", "drift_x", "drift_y", "drift_z"}));
+        register(new SensorSource(Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED,
+                "magnetometer_uncalibrated",
+                new String[]{"x", "y", "z", "bias_x", "bias_y", "bias_z"}));
+        register(new SensorSource(Sensor.TYPE_ROTATION_VECTOR, "rotation_vector",
+                new String[]{"x", "y", "z", "w", "accuracy"}));
+        register(new SensorSource(Sensor.TYPE_GAME_ROTATION_VECTOR, "game_rotation_vector",
+                new String[]{"x", "y", "z", "w"}));
+        register(new SensorSource(Sensor.TYPE_PRESSURE, "pressure", new String[]{"hpa"}));
+    }
+
+    /**
+     * Adds a source, replacing any source already registered for its sensor type. The table
+     * grows to the highest registered type, so vendor types should be registered sparingly.
+     */
+    public void register(SensorSource source) {
+        int type = source.getType();
+        if (type >= mByType.length) {
+            mByType = Arrays.copyOf(mByType, type + 1);
+        }
+        if (mByType[type] != null) {
+            mSources.remove(mByType[type]);
+        }
+        mByType[type] = source;
+        mSources.add(source);
+    }
+
+    /**
+     * @return Return the source of a sensor type, or null if the type is not registered.
+     */
+    public SensorSource get(int type) {
+        return type >= 0 && type < mByType.length ? mByType[type] : null;
+    }
+
+    public SensorSource get(String name) {
+        for (SensorSource source : mSources) {
+            if (source.getName().equals(name)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Return all sources in registration order.
+     */
+    public List<SensorSource> getSources() {
+        return Collections.unmodifiableList(mSources);
+    }
+}
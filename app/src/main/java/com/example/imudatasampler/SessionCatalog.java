@@ -0,0 +1,253 @@
+package com.example.imudatasampler;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent catalog of recorded sessions. Holds per-session metadata (device, time span,
+ * sampling profile, sample and loss counts, export status) and the per-stream counts and
+ * files, so sessions can be listed and filtered without opening the data files.
+ *
+ * Sessions are keyed by their start time in milliseconds, which is also the prefix of their
+ * file names. The catalog is updated incrementally while recording; callers should keep
+ * writes off the UI thread.
+ */
+public class SessionCatalog extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "session_catalog.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static final int EXPORT_NONE = 0;
+    public static final int EXPORT_PENDING = 1;
+    public static final int EXPORT_UPLOADED = 2;
+    public static final int EXPORT_FAILED = 3;
+
+    private static final String SESSION_COLUMNS = "_id, device, start_time, end_time, profile,"
+            + " sample_count, lost_count, loss_ratio, export_status";
+
+    /**
+     * One row of the sessions table.
+     */
+    public static class Session {
+        public long id;
+        public String device;
+        public long startTime;
+        public long endTime;
+        public String profile;
+        public long sampleCount;
+        public long lostCount;
+        public double lossRatio;
+        public int exportStatus;
+    }
+
+    private SQLiteStatement mUpdateStream;
+    private SQLiteStatement mUpdateSession;
+
+    public SessionCatalog(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * @param name Database file name, or null for an in-memory catalog.
+     */
+    SessionCatalog(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA foreign_keys = ON");
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE sessions ("
+                + "_id INTEGER PRIMARY KEY,"
+                + "device TEXT NOT NULL,"
+                + "start_time INTEGER NOT NULL,"
+                + "end_time INTEGER NOT NULL,"
+                + "profile TEXT,"
+                + "sample_count INTEGER NOT NULL DEFAULT 0,"
+                + "lost_count INTEGER NOT NULL DEFAULT 0,"
+                // Worst loss ratio of any stream, kept so loss filters need no computation
+                // per row. Streams that cannot detect loss report none and so cannot dilute it.
+                + "loss_ratio REAL NOT NULL DEFAULT 0,"
+                + "export_status INTEGER NOT NULL DEFAULT " + EXPORT_NONE + ")");
+        db.execSQL("CREATE INDEX sessions_device_start ON sessions (device, start_time)");
+        db.execSQL("CREATE INDEX sessions_start ON sessions (start_time)");
+        db.execSQL("CREATE INDEX sessions_export ON sessions (export_status)");
+        db.execSQL("CREATE TABLE streams ("
+                + "session_id INTEGER NOT NULL REFERENCES sessions (_id) ON DELETE CASCADE,"
+                + "name TEXT NOT NULL,"
+                + "sample_count INTEGER NOT NULL DEFAULT 0,"
+                + "lost_count INTEGER NOT NULL DEFAULT 0,"
+                + "PRIMARY KEY (session_id, name))");
+        db.execSQL("CREATE TABLE files ("
+                + "session_id INTEGER NOT NULL REFERENCES sessions (_id) ON DELETE CASCADE,"
+                + "path TEXT NOT NULL,"
+                + "size INTEGER NOT NULL,"
+                + "PRIMARY KEY (session_id, path))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one schema version exists so far.
+    }
+
+    public void beginSession(long session, String device, String profile) {
+        ContentValues values = new ContentValues();
+        values.put("_id", session);
+        values.put("device", device);
+        values.put("start_time", session);
+        values.put("end_time", session);
+        values.put("profile", profile);
+        getWritableDatabase().insertWithOnConflict("sessions", null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Records the running counts of every stream of a session and extends its end time.
+     * Called periodically while recording and once when the session stops. The session's
+     * loss ratio is that of its lossiest stream.
+     */
+    public void updateProgress(long session, long endTime, String[] streams,
+                               long[] sampleCounts, long[] lostCounts) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (mUpdateStream == null) {
+            mUpdateStream = db.compileStatement("INSERT OR REPLACE INTO streams"
+                    + " (session_id, name, sample_count, lost_count) VALUES (?, ?, ?, ?)");
+            mUpdateSession = db.compileStatement("UPDATE sessions SET end_time = ?,"
+                    + " sample_count = ?, lost_count = ?, loss_ratio = ? WHERE _id = ?");
+        }
+        long samples = 0;
+        long lost = 0;
+        double lossRatio = 0;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < streams.length; i++) {
+                mUpdateStream.bindLong(1, session);
+                mUpdateStream.bindString(2, streams[i]);
+                mUpdateStream.bindLong(3, sampleCounts[i]);
+                mUpdateStream.bindLong(4, lostCounts[i]);
+                mUpdateStream.executeInsert();
+                samples += sampleCounts[i];
+                lost += lostCounts[i];
+                long expected = sampleCounts[i] + lostCounts[i];
+                if (expected > 0) {
+                    lossRatio = Math.max(lossRatio, (double) lostCounts[i] / expected);
+                }
+            }
+            mUpdateSession.bindLong(1, endTime);
+            mUpdateSession.bindLong(2, samples);
+            mUpdateSession.bindLong(3, lost);
+            mUpdateSession.bindDouble(4, lossRatio);
+            mUpdateSession.bindLong(5, session);
+            mUpdateSession.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void addFiles(long session, List<File> files) {
+        SQLiteDatabase db = getWritableDatabase();
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (File file : files) {
+                values.clear();
+                values.put("session_id", session);
+                values.put("path", file.getAbsolutePath());
+                values.put("size", file.length());
+                db.insertWithOnConflict("files", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void setExportStatus(long session, int status) {
+        ContentValues values = new ContentValues();
+        values.put("export_status", status);
+        getWritableDatabase().update("sessions", values, "_id = ?",
+                new String[]{Long.toString(session)});
+    }
+
+    /**
+     * Finds the sessions of a device started within {@code [since, until)} whose loss ratio
+     * is below {@code maxLossRatio}, newest first. A null device matches every device.
+     */
+    public List<Session> findSessions(String device, long since, long until,
+                                      double maxLossRatio) {
+        if (device == null) {
+            return query("SELECT " + SESSION_COLUMNS + " FROM sessions"
+                            + " WHERE start_time >= ? AND start_time < ? AND loss_ratio < ?"
+                            + " ORDER BY start_time DESC",
+                    Long.toString(since), Long.toString(until), Double.toString(maxLossRatio));
+        }
+        return query("SELECT " + SESSION_COLUMNS + " FROM sessions"
+                        + " WHERE device = ? AND start_time >= ? AND start_time < ?"
+                        + " AND loss_ratio < ? ORDER BY start_time DESC",
+                device, Long.toString(since), Long.toString(until),
+                Double.toString(maxLossRatio));
+    }
+
+    public List<Session> findSessionsByExportStatus(int status) {
+        return query("SELECT " + SESSION_COLUMNS + " FROM sessions WHERE export_status = ?"
+                + " ORDER BY start_time", Integer.toString(status));
+    }
+
+    public List<File> getFiles(long session) {
+        List<File> files = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT path FROM files WHERE session_id = ? ORDER BY path",
+                new String[]{Long.toString(session)})) {
+            while (cursor.moveToNext()) {
+                files.add(new File(cursor.getString(0)));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Releases the statements compiled by {@link #updateProgress} before closing the database.
+     */
+    @Override
+    public synchronized void close() {
+        if (mUpdateStream != null) {
+            mUpdateStream.close();
+            mUpdateSession.close();
+            mUpdateStream = null;
+            mUpdateSession = null;
+        }
+        super.close();
+    }
+
+    private List<Session> query(String sql, String... args) {
+        List<Session> sessions = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Session session = new Session();
+                session.id = cursor.getLong(0);
+                session.device = cursor.getString(1);
+                session.startTime = cursor.getLong(2);
+                session.endTime = cursor.getLong(3);
+                session.profile = cursor.getString(4);
+                session.sampleCount = cursor.getLong(5);
+                session.lostCount = cursor.getLong(6);
+                session.lossRatio = cursor.getDouble(7);
+                session.exportStatus = cursor.getInt(8);
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+}
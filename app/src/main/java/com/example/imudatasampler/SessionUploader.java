@@ -0,0 +1,303 @@
+package com.example.imudatasampler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Uploads recorded session files to an HTTP ingest endpoint in the background.
+ *
+ * Each file is sent as fixed-size chunks, deflate-compressed and tagged with the CRC32 of the
+ * uncompressed bytes:
+ * <pre>
+ *   GET {endpoint}/sessions/{session}/files/{file}
+ *       -> number of chunks already acknowledged, 404 if none
+ *   PUT {endpoint}/sessions/{session}/files/{file}/chunks/{index}
+ *       headers X-Chunk-Count, X-Chunk-Crc32, X-Chunk-Length; body deflated chunk
+ * </pre>
+ * Chunks of a file are sent in order, so an interrupted transfer resumes after the last chunk
+ * the server acknowledged. A chunk the server rejects with 409 is out of order, e.g. because
+ * the response to a stored chunk was lost; the transfer then continues from the count the
+ * server reports. Files are uploaded concurrently by a bounded pool of low-priority
+ * threads, and all transfers wait while the uploader is paused, which the activity does for
+ * the duration of a recording.
+ */
+public class SessionUploader {
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Notified on a pool thread when all files of a session are uploaded or one has failed.
+     */
+    public interface Listener {
+        void onSessionUploaded(String session);
+
+        void onSessionFailed(String session, IOException e);
+    }
+
+    private final String mEndpoint;
+    private final int mChunkSize;
+    private final ThreadPoolExecutor mExecutor;
+    private final Object mPauseLock = new Object();
+    private boolean mPaused;
+    private long mRetryDelayMillis = RETRY_DELAY_MILLIS;
+
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mChunksSent = new AtomicLong();
+
+    // Per-thread buffers, reused for every chunk the thread sends.
+    private final ThreadLocal<byte[]> mRawBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[mChunkSize];
+        }
+    };
+    private final ThreadLocal<Deflater> mDeflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    public SessionUploader(String endpoint, int chunkSize, int concurrency) {
+        mEndpoint = endpoint.endsWith("/")
+                ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        mChunkSize = chunkSize;
+        mExecutor = new ThreadPoolExecutor(concurrency, concurrency, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SessionUploader-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the files of a session for upload. Files are uploaded concurrently with each
+     * other and with other sessions; the listener is notified once per session.
+     */
+    public void upload(final String session, List<File> files, final Listener listener) {
+        final AtomicInteger remaining = new AtomicInteger(files.size());
+        final AtomicInteger failed = new AtomicInteger();
+        for (final File file : files) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        uploadFile(session, file);
+                        if (remaining.decrementAndGet() == 0 && failed.get() == 0
+                                && listener != null) {
+                            listener.onSessionUploaded(session);
+                        }
+                    } catch (IOException e) {
+                        remaining.decrementAndGet();
+                        if (failed.getAndIncrement() == 0 && listener != null) {
+                            listener.onSessionFailed(session, e);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Holds back chunks not yet started until {@link #resume()} is called.
+     */
+    public void pause() {
+        synchronized (mPauseLock) {
+            mPaused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (mPauseLock) {
+            mPaused = false;
+            mPauseLock.notifyAll();
+        }
+    }
+
+    void setRetryDelayMillis(long retryDelayMillis) {
+        mRetryDelayMillis = retryDelayMillis;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public long getChunksSent() {
+        return mChunksSent.get();
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        mExecutor.shutdown();
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    void uploadFile(String session, File file) throws IOException, InterruptedException {
+        String fileUrl = mEndpoint + "/sessions/" + encode(session) + "/files/"
+                + encode(file.getName());
+        long length = file.length();
+        int chunkCount = (int) Math.max(1, (length + mChunkSize - 1) / mChunkSize);
+        int acknowledged = queryAcknowledged(fileUrl);
+
+        byte[] raw = mRawBuffers.get();
+        Deflater deflater = mDeflaters.get();
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(mChunkSize / 2);
+        byte[] deflateBuffer = new byte[8192];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            int index = acknowledged;
+            while (index < chunkCount) {
+                awaitResumed();
+                int size = (int) Math.min(mChunkSize, length - (long) index * mChunkSize);
+                in.seek((long) index * mChunkSize);
+                in.readFully(raw, 0, size);
+
+                crc.reset();
+                crc.update(raw, 0, size);
+                compressed.reset();
+                deflater.reset();
+                deflater.setInput(raw, 0, size);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(deflateBuffer);
+                    compressed.write(deflateBuffer, 0, n);
+                }
+                index = sendChunk(fileUrl, index, chunkCount, crc.getValue(), size, compressed);
+            }
+        }
+    }
+
+    private int queryAcknowledged(String fileUrl) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            HttpURLConnection connection = open(fileUrl);
+            try {
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return 0;
+                }
+                if (status == HttpURLConnection.HTTP_OK) {
+                    return Integer.parseInt(readBody(connection.getInputStream()).trim());
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new IOException("Status query of " + fileUrl + " failed: " + status);
+                }
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                connection.disconnect();
+            }
+            Thread.sleep(mRetryDelayMillis * attempt);
+        }
+    }
+
+    /**
+     * @return Return the index of the next chunk to send.
+     */
+    private int sendChunk(String fileUrl, int index, int chunkCount, long crc, int size,
+                          ByteArrayOutputStream body) throws IOException, InterruptedException {
+        String chunkUrl = fileUrl + "/chunks/" + index;
+        for (int attempt = 1; ; attempt++) {
+            HttpURLConnection connection = open(chunkUrl);
+            try {
+                connection.setRequestMethod("PUT");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.size());
+                connection.setRequestProperty("Content-Type", "application/octet-stream");
+                connection.setRequestProperty("Content-Encoding", "deflate");
+                connection.setRequestProperty("X-Chunk-Count", Integer.toString(chunkCount));
+                connection.setRequestProperty("X-Chunk-Crc32", Long.toString(crc));
+                connection.setRequestProperty("X-Chunk-Length", Integer.toString(size));
+                try (OutputStream out = connection.getOutputStream()) {
+                    body.writeTo(out);
+                }
+                int status = connection.getResponseCode();
+                if (status / 100 == 2) {
+                    mBytesSent.addAndGet(body.size());
+                    mChunksSent.incrementAndGet();
+                    return index + 1;
+                }
+                if (status == HttpURLConnection.HTTP_CONFLICT) {
+                    // Not the chunk the server expects, typically because an earlier attempt
+                    // was stored but its response lost. Continue from the server's count.
+                    int acknowledged = queryAcknowledged(fileUrl);
+                    if (acknowledged != index) {
+                        return acknowledged;
+                    }
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw new IOException("Upload of " + chunkUrl + " failed: " + status);
+                }
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                connection.disconnect();
+            }
+            Thread.sleep(mRetryDelayMillis * attempt);
+        }
+    }
+
+    private void awaitResumed() throws InterruptedException {
+        synchronized (mPauseLock) {
+            while (mPaused) {
+                mPauseLock.wait();
+            }
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return connection;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static String encode(String segment) throws IOException {
+        return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.imudatasampler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Gates one stream on a shared {@link MotionTrigger}. Outside capture windows records are
+ * only kept in a pre-roll ring; when a window opens the pre-roll is written out ahead of the
+ * triggering record, and records are then passed through until the window closes.
+ */
+public class TriggeredCapture {
+    private final MotionTrigger mTrigger;
+    private final RecordRingBuffer mPreRoll;
+    private boolean mCapturing;
+
+    /**
+     * @param maxRateHz Highest expected sampling rate, used to size the pre-roll ring.
+     */
+    public TriggeredCapture(MotionTrigger trigger, int recordSize, int maxRateHz) {
+        mTrigger = trigger;
+        mPreRoll = new RecordRingBuffer(recordSize,
+                (int) Math.max(1, trigger.getPreRollMillis() * maxRateHz / 1000));
+    }
+
+    public void add(long timeMillis, byte[] record, ByteArrayOutputStream out) {
+        mTrigger.countOffered(record.length);
+        if (!mTrigger.isCapturing(timeMillis)) {
+            mCapturing = false;
+            if (record.length == mPreRoll.getRecordSize()) {
+                mPreRoll.put(record, 0, timeMillis);
+            }
+            return;
+        }
+        if (!mCapturing) {
+            mCapturing = true;
+            try {
+                mTrigger.countPersisted(mPreRoll.writeTo(out,
+                        timeMillis - mTrigger.getPreRollMillis()));
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw.
+            }
+            mPreRoll.clear();
+        }
+        out.write(record, 0, record.length);
+        mTrigger.countPersisted(record.length);
+    }
+
+    public void reset() {
+        mPreRoll.clear();
+        mCapturing = false;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.imudatasampler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Stand-in for the ingest endpoint used by {@link SessionUploader}. Keeps the reassembled
+ * files in memory, verifies chunk order and checksums, and can reject chunks or drop responses
+ * to simulate an interrupted transfer.
+ */
+class LocalIngestServer {
+    private final HttpServer mServer;
+    private final Map<String, ByteArrayOutputStream> mFiles = new HashMap<>();
+    private final Map<String, Integer> mAcknowledged = new HashMap<>();
+    private int mChunksReceived;
+    private int mRejectFromChunk = Integer.MAX_VALUE;
+    private int mDropResponseToChunk = -1;
+
+    LocalIngestServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/ingest/sessions/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    LocalIngestServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.setExecutor(Executors.newFixedThreadPool(8));
+        mServer.start();
+    }
+
+    String getEndpoint() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/ingest";
+    }
+
+    void stop() {
+        mServer.stop(0);
+    }
+
+    /**
+     * Answers 503 to every chunk whose index is {@code index} or above.
+     */
+    synchronized void rejectFromChunk(int index) {
+        mRejectFromChunk = index;
+    }
+
+    /**
+     * Stores chunk {@code index} the next time it is received, but closes the connection
+     * instead of answering, as if the response was lost.
+     */
+    synchronized void dropResponseToChunk(int index) {
+        mDropResponseToChunk = index;
+    }
+
+    synchronized byte[] getFile(String session, String file) {
+        ByteArrayOutputStream content = mFiles.get(session + "/" + file);
+        return content == null ? null : content.toByteArray();
+    }
+
+    synchronized int getChunksReceived() {
+        return mChunksReceived;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // sessions/{session}/files/{file}[/chunks/{index}]
+        String path = exchange.getRequestURI().getRawPath();
+        String[] parts = path.substring(path.indexOf("/sessions/") + 1).split("/");
+        if (parts.length < 4) {
+            respond(exchange, 400, "");
+            return;
+        }
+        String key = URLDecoder.decode(parts[1], "UTF-8") + "/"
+                + URLDecoder.decode(parts[3], "UTF-8");
+        if ("GET".equals(exchange.getRequestMethod()) && parts.length == 4) {
+            Integer acknowledged;
+            synchronized (this) {
+                acknowledged = mAcknowledged.get(key);
+            }
+            if (acknowledged == null) {
+                respond(exchange, 404, "");
+            } else {
+                respond(exchange, 200, acknowledged.toString());
+            }
+            return;
+        }
+        if (!"PUT".equals(exchange.getRequestMethod()) || parts.length != 6) {
+            respond(exchange, 405, "");
+            return;
+        }
+
+        int index = Integer.parseInt(parts[5]);
+        byte[] body = readAll(exchange.getRequestBody());
+        int length = Integer.parseInt(exchange.getRequestHeaders().getFirst("X-Chunk-Length"));
+        long crc = Long.parseLong(exchange.getRequestHeaders().getFirst("X-Chunk-Crc32"));
+        byte[] chunk = inflate(body, length);
+        CRC32 actual = new CRC32();
+        actual.update(chunk, 0, chunk.length);
+        if (chunk.length != length || actual.getValue() != crc) {
+            respond(exchange, 400, "checksum mismatch");
+            return;
+        }
+        synchronized (this) {
+            if (index >= mRejectFromChunk) {
+                respond(exchange, 503, "");
+                return;
+            }
+            int acknowledged = mAcknowledged.containsKey(key) ? mAcknowledged.get(key) : 0;
+            if (index != acknowledged) {
+                respond(exchange, 409, Integer.toString(acknowledged));
+                return;
+            }
+            if (!mFiles.containsKey(key)) {
+                mFiles.put(key, new ByteArrayOutputStream());
+            }
+            mFiles.get(key).write(chunk, 0, chunk.length);
+            mAcknowledged.put(key, acknowledged + 1);
+            mChunksReceived++;
+            if (index == mDropResponseToChunk) {
+                mDropResponseToChunk = -1;
+                return;
+            }
+        }
+        respond(exchange, 204, null);
+    }
+
+    private static byte[] inflate(byte[] body, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(body);
+        byte[] out = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(out, n, length - n);
+            }
+            return n == length ? out : java.util.Arrays.copyOf(out, n);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.imudatasampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MinMaxDecimatorTest {
+    // Two channels, four columns of 10 ms each.
+    private final MinMaxDecimator mDecimator = new MinMaxDecimator(2, 4, 40);
+    private final float[] mMin = new float[4];
+    private final float[] mMax = new float[4];
+
+    @Test
+    public void copyChannel_reportsNothingBeforeFirstSample() {
+        assertFalse(mDecimator.copyChannel(0, mMin, mMax));
+        mDecimator.add(5, new float[]{1, 2}, 0, 2);
+        assertTrue(mDecimator.copyChannel(0, mMin, mMax));
+        mDecimator.clear();
+        assertFalse(mDecimator.copyChannel(0, mMin, mMax));
+    }
+
+    @Test
+    public void add_keepsMinAndMaxPerColumn() {
+        mDecimator.add(30, new float[]{3, -3}, 0, 2);
+        mDecimator.add(31, new float[]{-1, 7}, 0, 2);
+        mDecimator.add(39, new float[]{2, 0}, 0, 2);
+
+        mDecimator.copyChannel(0, mMin, mMax);
+        assertEquals(-1, mMin[3], 0f);
+        assertEquals(3, mMax[3], 0f);
+        mDecimator.copyChannel(1, mMin, mMax);
+        assertEquals(-3, mMin[3], 0f);
+        assertEquals(7, mMax[3], 0f);
+        // Older columns hold no samples yet.
+        assertTrue(Float.isNaN(mMin[0]));
+        assertTrue(Float.isNaN(mMax[2]));
+    }
+
+    @Test
+    public void add_wrapsRingAndReportsOldestColumnFirst() {
+        for (int bucket = 0; bucket < 6; bucket++) {
+            mDecimator.add(bucket * 10, new float[]{bucket, 0}, 0, 2);
+        }
+
+        mDecimator.copyChannel(0, mMin, mMax);
+        assertArrayEquals(new float[]{2, 3, 4, 5}, mMin, 0f);
+        assertArrayEquals(new float[]{2, 3, 4, 5}, mMax, 0f);
+    }
+
+    @Test
+    public void add_dropsSamplesOlderThanWindow() {
+        mDecimator.add(50, new float[]{5, 5}, 0, 2);
+        // Bucket 1 would land in the slot of visible bucket 5.
+        mDecimator.add(10, new float[]{-100, -100}, 0, 2);
+        // Bucket 2 is still inside the window.
+        mDecimator.add(20, new float[]{2, 2}, 0, 2);
+
+        mDecimator.copyChannel(0, mMin, mMax);
+        assertEquals(2, mMin[0], 0f);
+        assertTrue(Float.isNaN(mMin[1]));
+        assertTrue(Float.isNaN(mMin[2]));
+        assertEquals(5, mMin[3], 0f);
+    }
+
+    @Test
+    public void add_partialChannelsLeaveOthersEmpty() {
+        mDecimator.add(0, new float[]{1, 1}, 0, 2);
+        // A new bucket started by channel 1 alone clears channel 0 of the reused slot.
+        mDecimator.add(40, new float[]{9}, 1, 1);
+
+        mDecimator.copyChannel(0, mMin, mMax);
+        assertTrue(Float.isNaN(mMin[3]));
+        mDecimator.copyChannel(1, mMin, mMax);
+        assertEquals(9, mMin[3], 0f);
+        assertEquals(9, mMax[3], 0f);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.imudatasampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+    private static final float GRAVITY = 9.81f;
+
+    private final MotionDetector mDetector = new MotionDetector(0.15f, 0.08f, 0.02f);
+
+    @Test
+    public void update_detectsJoltFromRest() {
+        for (int i = 0; i < 100; i++) {
+            assertFalse(mDetector.update(0, 0, GRAVITY));
+        }
+        assertTrue(mDetector.update(0, 0, 15f));
+        for (int i = 0; i < 100; i++) {
+            mDetector.update(0, 0, GRAVITY);
+        }
+        assertFalse(mDetector.isMoving());
+    }
+
+    @Test
+    public void update_recoversWhenStartedMidMotion() {
+        // The session starts during a jolt, then the device comes to rest.
+        for (int i = 0; i < 20; i++) {
+            mDetector.update(0, 0, 15f);
+        }
+        int samples = 0;
+        while (mDetector.update(0, 0, GRAVITY)) {
+            samples++;
+            assertTrue("detector latched in motion", samples < 2000);
+        }
+        // Once recovered, a real jolt is detected again.
+        for (int i = 0; i < 100; i++) {
+            mDetector.update(0, 0, GRAVITY);
+        }
+        assertFalse(mDetector.isMoving());
+        assertTrue(mDetector.update(0, 0, 15f));
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.imudatasampler;
+
+import com.example.imudatasampler.converter.SessionConverter;
+import com.example.imudatasampler.converter.StreamColumns;
+import com.example.imudatasampler.converter.StreamFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class RollupStageTest {
+    private static final String[] AXES = {"x", "y", "z"};
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDir;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mDir = mTemporaryFolder.getRoot();
+        mPool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void add_flushesRollupsWhenMinuteBucketCompletes() throws IOException {
+        RollupStage stage = new RollupStage("accelerometer", AXES,
+                StreamFormat.sessionRecordSize(AXES.length), 60 * 1000, 100);
+        stage.start(mDir, 100);
+        float[] values = new float[AXES.length];
+        byte[] record = new byte[StreamFormat.sessionRecordSize(AXES.length)];
+        for (long time = 0; time <= 60 * 1000; time += 10) {
+            stage.add(time, values, record, 0);
+        }
+
+        // Readable before the stage is stopped.
+        SessionConverter converter = new SessionConverter(mPool);
+        assertEquals(60, converter.decode(new File(mDir, "100_accelerometer_rollup_1s")).size());
+        assertEquals(1, converter.decode(new File(mDir, "100_accelerometer_rollup_1min")).size());
+        stage.stop();
+    }
+
+    @Test
+    public void stop_persistsBucketAggregates() throws IOException {
+        RollupStage stage = new RollupStage("accelerometer", AXES,
+                StreamFormat.sessionRecordSize(AXES.length), 60 * 1000, 100);
+        stage.start(mDir, 100);
+        float[] values = new float[AXES.length];
+        byte[] record = new byte[StreamFormat.sessionRecordSize(AXES.length)];
+        // Starts and stops mid-second: buckets at 0, 1000 and 2000 hold 50, 100, 50 samples.
+        for (long time = 500; time < 2500; time += 10) {
+            values[0] = (time / 10) % 2 == 0 ? 1 : -1;
+            values[1] = (time % 1000) / 10;
+            values[2] = 9.81f;
+            stage.add(time, values, record, 0);
+        }
+        stage.stop();
+
+        StreamColumns seconds = new SessionConverter(mPool)
+                .decode(new File(mDir, "100_accelerometer_rollup_1s"));
+        // Columns: count, then min, max, mean and RMS of each axis.
+        assertEquals(3, seconds.size());
+        assertEquals(0, seconds.getTime(0));
+        assertEquals(1000, seconds.getTime(1));
+        assertEquals(2000, seconds.getTime(2));
+        assertEquals(50, seconds.getValue(0, 0), 0f);
+        assertEquals(100, seconds.getValue(0, 1), 0f);
+        assertEquals(50, seconds.getValue(0, 2), 0f);
+
+        assertEquals(-1, seconds.getValue(1, 1), 0f);
+        assertEquals(1, seconds.getValue(2, 1), 0f);
+        assertEquals(0, seconds.getValue(3, 1), 1e-6f);
+        assertEquals(1, seconds.getValue(4, 1), 1e-6f);
+
+        assertEquals(0, seconds.getValue(5, 1), 0f);
+        assertEquals(99, seconds.getValue(6, 1), 0f);
+        assertEquals(49.5f, seconds.getValue(7, 1), 1e-4f);
+        assertEquals((float) Math.sqrt(328350 / 100.0), seconds.getValue(8, 1), 1e-4f);
+        // The first bucket only saw the second half of the range.
+        assertEquals(50, seconds.getValue(5, 0), 0f);
+        assertEquals(74.5f, seconds.getValue(7, 0), 1e-4f);
+
+        assertEquals(9.81f, seconds.getValue(9, 1), 0f);
+        assertEquals(9.81f, seconds.getValue(10, 1), 0f);
+        assertEquals(9.81f, seconds.getValue(11, 1), 1e-5f);
+        assertEquals(9.81f, seconds.getValue(12, 1), 1e-5f);
+    }
+
+    @Test
+    public void dumpRing_writesOnlyTheRingWindowOfESenseRecords() throws IOException {
+        int recordSize = 16 + Long.BYTES;
+        // Sized for 200 Hz, so the ring holds more than the 1 s window at 100 Hz.
+        RollupStage stage = new RollupStage("esense_imu",
+                new String[]{"gyro_x", "gyro_y", "gyro_z", "acc_x", "acc_y", "acc_z"},
+                recordSize, 1000, 200);
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        float[] values = new float[6];
+        for (long time = 0; time < 3000; time += 10) {
+            record.clear();
+            record.putInt(0);
+            record.putShort((short) (time / 10));
+            record.position(16);
+            record.putLong(time);
+            stage.add(time, values, record.array(), 0);
+        }
+        File dump = new File(mDir, "100_esense_imu_dump_2990");
+        assertTrue(stage.dumpRing(dump, 2990));
+
+        StreamColumns dumped = new SessionConverter(mPool).decode(dump);
+        assertEquals("esense_imu_dump_2990", dumped.getName());
+        assertEquals(101, dumped.size());
+        assertEquals(1990, dumped.getTime(0));
+        assertEquals(2990, dumped.getTime(100));
+        assertEquals(199, dumped.getValue(0, 0), 0f);
+        assertEquals(299, dumped.getValue(0, 100), 0f);
+    }
+
+    @Test
+    public void converter_keepsRollupResolutionsApart() throws IOException {
+        RollupStage stage = new RollupStage("accelerometer", AXES,
+                StreamFormat.sessionRecordSize(AXES.length), 60 * 1000, 100);
+        stage.start(mDir, 100);
+        ByteBuffer record = ByteBuffer.allocate(StreamFormat.sessionRecordSize(AXES.length));
+        float[] values = new float[AXES.length];
+        // 125 s at 100 Hz: 125 one-second and 3 one-minute rollups.
+        for (long time = 0; time < 125 * 1000; time += 10) {
+            values[0] = time / 1000f;
+            values[2] = 9.81f;
+            record.clear();
+            record.putLong(time);
+            for (float value : values) {
+                record.putFloat(value);
+            }
+            stage.add(time, values, record.array(), 0);
+        }
+        stage.stop();
+
+        SessionConverter converter = new SessionConverter(mPool);
+        StreamColumns seconds = converter.decode(new File(mDir, "100_accelerometer_rollup_1s"));
+        StreamColumns minutes =
+                converter.decode(new File(mDir, "100_accelerometer_rollup_1min"));
+        assertEquals("accelerometer_rollup_1s", seconds.getName());
+        assertEquals("accelerometer_rollup_1min", minutes.getName());
+        assertEquals(125, seconds.size());
+        assertEquals(3, minutes.size());
+        assertEquals(100, seconds.getValue(0, 0), 0f);
+
+        converter.convert(SessionConverter.groupSessions(Collections.singletonList(mDir)), mDir);
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(new File(mDir, "100.csv")))) {
+            List<String> columns = Arrays.asList(reader.readLine().split(","));
+            Set<String> distinct = new HashSet<>(columns);
+            assertEquals(columns.size(), distinct.size());
+            assertTrue(distinct.contains("accelerometer_rollup_1s_x_mean"));
+            assertTrue(distinct.contains("accelerometer_rollup_1min_x_mean"));
+        }
+    }
+}
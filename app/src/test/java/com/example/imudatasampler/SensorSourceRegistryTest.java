@@ -0,0 +1,56 @@
+package com.example.imudatasampler;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorSourceRegistryTest {
+    private final SensorSourceRegistry mRegistry = new SensorSourceRegistry();
+
+    @Test
+    public void get_looksUpSourcesByTypeAndName() {
+        SensorSource gyroscope = mRegistry.get(Sensor.TYPE_GYROSCOPE);
+        assertEquals("gyroscope", gyroscope.getName());
+        assertSame(gyroscope, mRegistry.get("gyroscope"));
+        assertEquals(5, mRegistry.get(Sensor.TYPE_ROTATION_VECTOR).getAxisNames().length);
+        assertEquals(1, mRegistry.get(Sensor.TYPE_PRESSURE).getAxisNames().length);
+    }
+
+    @Test
+    public void get_returnsNullForUnknownTypes() {
+        assertNull(mRegistry.get(-1));
+        assertNull(mRegistry.get(Sensor.TYPE_SIGNIFICANT_MOTION));
+        assertNull(mRegistry.get(Integer.MAX_VALUE));
+        assertNull(mRegistry.get("heart_rate"));
+    }
+
+    @Test
+    public void register_replacesSourceOfSameType() {
+        int count = mRegistry.getSources().size();
+        SensorSource old = mRegistry.get(Sensor.TYPE_ACCELEROMETER);
+        SensorSource replacement = new SensorSource(Sensor.TYPE_ACCELEROMETER,
+                "accelerometer_raw", new String[]{"x", "y", "z"});
+
+        mRegistry.register(replacement);
+
+        assertSame(replacement, mRegistry.get(Sensor.TYPE_ACCELEROMETER));
+        assertEquals(count, mRegistry.getSources().size());
+        assertFalse(mRegistry.getSources().contains(old));
+        assertNull(mRegistry.get("accelerometer"));
+    }
+
+    @Test
+    public void register_growsTableForVendorTypes() {
+        int vendorType = 0x10000 + 5;
+        SensorSource vendor = new SensorSource(vendorType, "vendor_imu",
+                new String[]{"a", "b"});
+
+        mRegistry.register(vendor);
+
+        assertSame(vendor, mRegistry.get(vendorType));
+        assertNull(mRegistry.get(vendorType - 1));
+        assertNotNull(mRegistry.get(Sensor.TYPE_GYROSCOPE));
+    }
+}
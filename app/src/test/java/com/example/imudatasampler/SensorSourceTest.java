@@ -0,0 +1,117 @@
+package com.example.imudatasampler;
+
+import android.hardware.Sensor;
+
+import com.example.imudatasampler.converter.SessionConverter;
+import com.example.imudatasampler.converter.StreamColumns;
+import com.example.imudatasampler.converter.StreamFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SensorSourceTest {
+    private static final String[] AXES = {"x", "y", "z", "w", "accuracy"};
+
+    private final SensorSource mSource = new SensorSource(Sensor.TYPE_ROTATION_VECTOR,
+            "rotation_vector", AXES);
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDir;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mDir = mTemporaryFolder.getRoot();
+        mPool = new ForkJoinPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void read_zeroFillsMissingAxesAndDropsExtraValues() {
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5},
+                mSource.read(new float[]{1, 2, 3, 4, 5, 6}), 0f);
+        // Older devices report the rotation vector without w and accuracy.
+        assertArrayEquals(new float[]{7, 8, 9, 0, 0},
+                mSource.read(new float[]{7, 8, 9}), 0f);
+    }
+
+    @Test
+    public void save_roundTripsThroughConverter() throws IOException {
+        mSource.start();
+        for (int i = 0; i < 10; i++) {
+            mSource.read(new float[]{i, -i, 0.5f, 1});
+            mSource.record(1000 + i);
+        }
+        assertEquals(10, mSource.getSampleCount());
+        assertTrue(mSource.save(mDir, 100));
+
+        File file = new File(mDir, "100_rotation_vector");
+        assertEquals(StreamFormat.sessionRecordSize(AXES.length), mSource.getRecordSize());
+        assertNotNull(StreamFormat.detect(file));
+        StreamColumns columns = new SessionConverter(mPool).decode(file);
+        assertEquals("rotation_vector", columns.getName());
+        assertArrayEquals(AXES, columns.getAxisNames());
+        assertEquals(10, columns.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000 + i, columns.getTime(i));
+            assertEquals(i, columns.getValue(0, i), 0f);
+            assertEquals(-i, columns.getValue(1, i), 0f);
+            assertEquals(1, columns.getValue(3, i), 0f);
+            assertEquals(0, columns.getValue(4, i), 0f);
+        }
+    }
+
+    @Test
+    public void dumpRing_roundTripsThroughConverter() throws IOException {
+        mSource.startRollup(mDir, 100, 1000, 100);
+        for (int i = 0; i < 300; i++) {
+            mSource.read(new float[]{i, 0, 0, 1, 0});
+            mSource.record(10 * i);
+        }
+        assertTrue(mSource.dumpRing(mDir, 100, 2990));
+        mSource.stop();
+
+        StreamColumns columns = new SessionConverter(mPool).decode(
+                new File(mDir, "100_rotation_vector_dump_2990"));
+        assertEquals("rotation_vector_dump_2990", columns.getName());
+        // Only the last second before the dump is kept.
+        assertEquals(100, columns.size());
+        assertEquals(2000, columns.getTime(0));
+        assertEquals(299, columns.getValue(0, 99), 0f);
+    }
+
+    @Test
+    public void record_encodesTimeAndValuesBigEndian() throws IOException {
+        mSource.start();
+        mSource.read(new float[]{1.5f, 2, 3, 4, 5});
+        mSource.record(42);
+        assertTrue(mSource.save(mDir, 1));
+
+        ByteBuffer record = ByteBuffer.allocate(mSource.getRecordSize());
+        record.putLong(42);
+        for (float value : new float[]{1.5f, 2, 3, 4, 5}) {
+            record.putFloat(value);
+        }
+        byte[] file = Files.readAllBytes(new File(mDir, "1_rotation_vector").toPath());
+        byte[] tail = new byte[record.capacity()];
+        System.arraycopy(file, file.length - tail.length, tail, 0, tail.length);
+        assertArrayEquals(record.array(), tail);
+    }
+}
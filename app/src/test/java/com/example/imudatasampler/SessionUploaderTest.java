@@ -0,0 +1,170 @@
+package com.example.imudatasampler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SessionUploaderTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private LocalIngestServer mServer;
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalIngestServer();
+        mDir = mTemporaryFolder.getRoot();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void upload_resumesAfterLastAcknowledgedChunk() throws Exception {
+        File file = createFile("100_esense_imu_readings", 10 * CHUNK_SIZE + 123);
+        mServer.rejectFromChunk(4);
+
+        SessionUploader interrupted = newUploader(2);
+        assertNotNull("first transfer should fail", upload(interrupted, file));
+        interrupted.shutdown();
+        assertEquals(4, mServer.getChunksReceived());
+
+        mServer.rejectFromChunk(Integer.MAX_VALUE);
+        SessionUploader resumed = newUploader(2);
+        assertNull(upload(resumed, file));
+        resumed.shutdown();
+
+        // Only the chunks after the acknowledged ones are sent again.
+        assertEquals(7, resumed.getChunksSent());
+        assertEquals(11, mServer.getChunksReceived());
+        assertArrayEquals(Files.readAllBytes(file.toPath()),
+                mServer.getFile("100", file.getName()));
+    }
+
+    @Test
+    public void upload_continuesWhenStoredChunkResponseIsLost() throws Exception {
+        File file = createFile("150_accelerometer", 5 * CHUNK_SIZE);
+        mServer.dropResponseToChunk(2);
+
+        SessionUploader uploader = newUploader(1);
+        assertNull(upload(uploader, file));
+        uploader.shutdown();
+
+        // The retry of chunk 2 is answered with 409 and the transfer moves on to chunk 3.
+        assertEquals(5, mServer.getChunksReceived());
+        assertEquals(4, uploader.getChunksSent());
+        assertArrayEquals(Files.readAllBytes(file.toPath()),
+                mServer.getFile("150", file.getName()));
+    }
+
+    @Test
+    public void upload_holdsChunksWhilePaused() throws Exception {
+        File file = createFile("200_gyroscope_readings200", 3 * CHUNK_SIZE);
+        SessionUploader uploader = newUploader(1);
+        uploader.pause();
+        final CountDownLatch done = new CountDownLatch(1);
+        uploader.upload("200", Collections.singletonList(file), latchListener(done, null));
+
+        assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, mServer.getChunksReceived());
+        uploader.resume();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(3, mServer.getChunksReceived());
+        uploader.shutdown();
+    }
+
+    @Test
+    public void upload_concurrentSessionsThroughput() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            files.add(createFile("300_stream" + i + "_readings300", 2 * 1024 * 1024));
+        }
+        SessionUploader uploader = newUploader(4);
+        long start = System.nanoTime();
+        assertNull(upload(uploader, files.toArray(new File[0])));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        uploader.shutdown();
+
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+            assertArrayEquals(Files.readAllBytes(file.toPath()),
+                    mServer.getFile("300", file.getName()));
+        }
+        System.out.println(String.format("Uploaded %.1f MB (%.1f MB on the wire) in %.2f s,"
+                        + " %.1f MB/s", bytes / 1e6, uploader.getBytesSent() / 1e6, seconds,
+                bytes / 1e6 / seconds));
+    }
+
+    private SessionUploader newUploader(int concurrency) {
+        SessionUploader uploader = new SessionUploader(mServer.getEndpoint(), CHUNK_SIZE,
+                concurrency);
+        uploader.setRetryDelayMillis(10);
+        return uploader;
+    }
+
+    // Uploads the files as one session and returns the failure, or null on success.
+    private static IOException upload(SessionUploader uploader, File... files)
+            throws InterruptedException {
+        String session = files[0].getName().substring(0, files[0].getName().indexOf('_'));
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        uploader.upload(session, Arrays.asList(files), latchListener(done, failure));
+        assertTrue("upload timed out", done.await(60, TimeUnit.SECONDS));
+        return failure.get();
+    }
+
+    private static SessionUploader.Listener latchListener(
+            final CountDownLatch done, final AtomicReference<IOException> failure) {
+        return new SessionUploader.Listener() {
+            @Override
+            public void onSessionUploaded(String session) {
+                done.countDown();
+            }
+
+            @Override
+            public void onSessionFailed(String session, IOException e) {
+                if (failure != null) {
+                    failure.set(e);
+                }
+                done.countDown();
+            }
+        };
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        // Sensor-like data: slowly varying values compress, noise keeps it realistic.
+        byte[] data = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ((i / 64) + random.nextInt(4));
+        }
+        File file = new File(mDir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.imudatasampler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TriggeredCaptureTest {
+    private static final int RATE_HZ = 100;
+    private static final long PERIOD_MILLIS = 1000 / RATE_HZ;
+    private static final long PRE_ROLL_MILLIS = 1000;
+    private static final long POST_ROLL_MILLIS = 2000;
+    // Time followed by the sample index.
+    private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final MotionTrigger mTrigger = new MotionTrigger(PRE_ROLL_MILLIS, POST_ROLL_MILLIS,
+            new MotionDetector(0.15f, 0.08f, 0.02f));
+    private final TriggeredCapture mCapture =
+            new TriggeredCapture(mTrigger, RECORD_SIZE, RATE_HZ);
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+    @Test
+    public void add_persistsPreRollJoltAndPostRoll() {
+        // 100 ms jolt at 10 s; the last moving sample is at 10.09 s.
+        record(30000, 10000, 10100);
+
+        assertPersisted(9000, 12090);
+        assertEquals(3000 * RECORD_SIZE, mTrigger.getBytesOffered());
+        assertEquals(310 * RECORD_SIZE, mTrigger.getBytesPersisted());
+    }
+
+    @Test
+    public void add_motionDuringPostRollExtendsWindow() {
+        record(30000, 10000, 10100, 11500, 11600);
+
+        // One window, and no second pre-roll inside it.
+        assertPersisted(9000, 13590);
+        assertEquals(460 * RECORD_SIZE, mTrigger.getBytesPersisted());
+    }
+
+    @Test
+    public void add_rearmsAfterWindowCloses() {
+        record(30000, 10000, 10100, 20000, 20100);
+
+        long[] times = persistedTimes();
+        assertEquals(620, times.length);
+        assertEquals(9000, times[0]);
+        assertEquals(12090, times[309]);
+        // The second window replays its own pre-roll only.
+        assertEquals(19000, times[310]);
+        assertEquals(22090, times[619]);
+        assertEquals(620 * RECORD_SIZE, mTrigger.getBytesPersisted());
+    }
+
+    @Test
+    public void reset_clearsWindowAndCounters() {
+        record(10200, 10000, 10100);
+        assertTrue(mTrigger.isCapturing(10200));
+
+        mTrigger.reset();
+        mCapture.reset();
+
+        assertFalse(mTrigger.isCapturing(10200));
+        assertEquals(0, mTrigger.getBytesOffered());
+        assertEquals(0, mTrigger.getBytesPersisted());
+    }
+
+    // Records samples at rest from time 0 until endMillis, with jolts over the given
+    // [start, end) ranges, feeding the detector before each record as MainActivity does.
+    private void record(long endMillis, long... jolts) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        int index = 0;
+        for (long time = 0; time < endMillis; time += PERIOD_MILLIS) {
+            float z = 1;
+            for (int i = 0; i < jolts.length; i += 2) {
+                if (time >= jolts[i] && time < jolts[i + 1]) {
+                    z = 2;
+                }
+            }
+            mTrigger.onAcceleration(0, time, 0, 0, z);
+            record.clear();
+            record.putLong(time);
+            record.putInt(index++);
+            mCapture.add(time, record.array(), mOut);
+        }
+    }
+
+    // Asserts that exactly the records from first to last, without gaps, were persisted.
+    private void assertPersisted(long first, long last) {
+        long[] times = persistedTimes();
+        assertEquals((last - first) / PERIOD_MILLIS + 1, times.length);
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(first + i * PERIOD_MILLIS, times[i]);
+        }
+    }
+
+    private long[] persistedTimes() {
+        ByteBuffer persisted = ByteBuffer.wrap(mOut.toByteArray());
+        long[] times = new long[persisted.remaining() / RECORD_SIZE];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = persisted.getLong(i * RECORD_SIZE);
+        }
+        return times;
+    }
+}
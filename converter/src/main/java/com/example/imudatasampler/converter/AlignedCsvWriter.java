@@ -0,0 +1,208 @@
+package com.example.imudatasampler.converter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Merges the streams of one session into a single CSV with one column per stream axis.
+ *
+ * One row is emitted per record of any stream, in time order, so records sharing a
+ * timestamp (e.g. eSense packets delivered in one BLE connection event) are all kept. The
+ * other streams contribute their latest record consumed so far (sample and hold), and stay
+ * empty until their first record, so streams recorded at different rates line up on a common
+ * time axis.
+ *
+ * Formatting dominates the cost of a conversion, so the session is cut into time ranges of
+ * roughly equal row counts. Ranges are formatted by parallel fork-join tasks into their own
+ * buffers, a bounded batch at a time, and the buffers are written out in order. Every range
+ * starts from cursors found by binary search, so the output does not depend on the split.
+ */
+final class AlignedCsvWriter {
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    // Rows formatted by one task; with the batch size this bounds the memory held by
+    // formatted output that is waiting to be written.
+    static final int SEGMENT_ROWS = 16 * 1024;
+
+    private AlignedCsvWriter() {
+    }
+
+    /**
+     * @return Return the number of rows written.
+     */
+    static long write(File file, List<StreamColumns> streams) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+                WRITE_BUFFER_SIZE)) {
+            return write(out, streams, SEGMENT_ROWS);
+        }
+    }
+
+    static long write(OutputStream out, List<StreamColumns> streams, int segmentRows)
+            throws IOException {
+        StringBuilder header = new StringBuilder(256);
+        header.append("time_millis");
+        for (StreamColumns stream : streams) {
+            for (String axis : stream.axisNames) {
+                header.append(',').append(stream.name).append('_').append(axis);
+            }
+        }
+        header.append('\n');
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+
+        long[] boundaries = segmentBoundaries(streams, segmentRows);
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        int batchSize = 2 * (pool != null ? pool : ForkJoinPool.commonPool()).getParallelism();
+        List<SegmentTask> batch = new ArrayList<>(batchSize);
+        long rows = 0;
+        for (int first = 0; first < boundaries.length - 1; first += batchSize) {
+            batch.clear();
+            for (int i = first; i < Math.min(first + batchSize, boundaries.length - 1); i++) {
+                batch.add(new SegmentTask(streams, boundaries[i], boundaries[i + 1]));
+            }
+            ForkJoinTask.invokeAll(batch);
+            for (SegmentTask task : batch) {
+                out.write(task.mOutput);
+                rows += task.mRows;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Splits the session's time span into ranges {@code [boundaries[i], boundaries[i + 1])}
+     * holding about {@code segmentRows} rows each. Records sharing a timestamp always fall in
+     * the same range.
+     */
+    static long[] segmentBoundaries(List<StreamColumns> streams, int segmentRows) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        long totalRows = 0;
+        for (StreamColumns stream : streams) {
+            if (stream.size() > 0) {
+                first = Math.min(first, stream.times[0]);
+                last = Math.max(last, stream.times[stream.size() - 1]);
+                totalRows += stream.size();
+            }
+        }
+        if (totalRows == 0) {
+            return new long[0];
+        }
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(first);
+        for (long target = segmentRows; target < totalRows; target += segmentRows) {
+            // Smallest time with at least target rows before it.
+            long low = boundaries.get(boundaries.size() - 1) + 1;
+            long high = last + 1;
+            while (low < high) {
+                long mid = low + (high - low) / 2;
+                if (rowsBefore(streams, mid) >= target) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            if (low <= last) {
+                boundaries.add(low);
+            }
+        }
+        boundaries.add(last + 1);
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    private static long rowsBefore(List<StreamColumns> streams, long time) {
+        long rows = 0;
+        for (StreamColumns stream : streams) {
+            rows += lowerBound(stream.times, time);
+        }
+        return rows;
+    }
+
+    /**
+     * @return Return the index of the first time not before {@code time}.
+     */
+    static int lowerBound(long[] times, long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class SegmentTask extends RecursiveAction {
+        private final List<StreamColumns> mStreams;
+        private final long mStart;
+        private final long mEnd;
+        byte[] mOutput;
+        long mRows;
+
+        SegmentTask(List<StreamColumns> streams, long start, long end) {
+            mStreams = streams;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            int streamCount = mStreams.size();
+            // Index of the next unconsumed record of each stream, and the end of the range.
+            int[] next = new int[streamCount];
+            int[] end = new int[streamCount];
+            for (int s = 0; s < streamCount; s++) {
+                next[s] = lowerBound(mStreams.get(s).times, mStart);
+                end[s] = lowerBound(mStreams.get(s).times, mEnd);
+            }
+            StringBuilder out = new StringBuilder(SEGMENT_ROWS * 64);
+            while (true) {
+                // Stream owning the oldest unconsumed record; ties go to the first stream.
+                int owner = -1;
+                long time = Long.MAX_VALUE;
+                for (int s = 0; s < streamCount; s++) {
+                    if (next[s] < end[s] && mStreams.get(s).times[next[s]] < time) {
+                        owner = s;
+                        time = mStreams.get(s).times[next[s]];
+                    }
+                }
+                if (owner < 0) {
+                    break;
+                }
+                next[owner]++;
+                out.append(time);
+                for (int s = 0; s < streamCount; s++) {
+                    StreamColumns stream = mStreams.get(s);
+                    int held = next[s] - 1;
+                    for (float[] axis : stream.axes) {
+                        out.append(',');
+                        if (held >= 0) {
+                            if (stream.integral) {
+                                out.append((int) axis[held]);
+                            } else {
+                                out.append(axis[held]);
+                            }
+                        }
+                    }
+                }
+                out.append('\n');
+                mRows++;
+            }
+            mOutput = out.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.imudatasampler.converter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes a range of records of one file. Ranges larger than a chunk are split in half and
+ * decoded in parallel; since records have a fixed size, every split lands on a record
+ * boundary and each half writes into its own rows of the shared {@link StreamColumns}.
+ */
+final class ChunkDecoder extends RecursiveAction {
+    static final int CHUNK_BYTES = 1 << 20;
+
+    // One read buffer per pool thread, reused across chunks and files.
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(CHUNK_BYTES);
+        }
+    };
+
+    private final FileChannel mChannel;
+    private final StreamFormat mFormat;
+    private final StreamColumns mOut;
+    private final int mFirstRecord;
+    private final int mRecordCount;
+
+    ChunkDecoder(FileChannel channel, StreamFormat format, StreamColumns out,
+                 int firstRecord, int recordCount) {
+        mChannel = channel;
+        mFormat = format;
+        mOut = out;
+        mFirstRecord = firstRecord;
+        mRecordCount = recordCount;
+    }
+
+    @Override
+    protected void compute() {
+        int recordsPerChunk = Math.max(1, CHUNK_BYTES / mFormat.recordSize);
+        if (mRecordCount > recordsPerChunk) {
+            int half = mRecordCount / 2;
+            invokeAll(new ChunkDecoder(mChannel, mFormat, mOut, mFirstRecord, half),
+                    new ChunkDecoder(mChannel, mFormat, mOut, mFirstRecord + half,
+                            mRecordCount - half));
+            return;
+        }
+        ByteBuffer buffer = mFormat.recordSize <= CHUNK_BYTES
+                ? BUFFERS.get() : ByteBuffer.allocate(mFormat.recordSize);
+        buffer.clear();
+        buffer.limit(mRecordCount * mFormat.recordSize);
+        long position = mFormat.headerSize + (long) mFirstRecord * mFormat.recordSize;
+        try {
+            while (buffer.hasRemaining()) {
+                int read = mChannel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("File truncated while decoding");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        for (int i = 0; i < mRecordCount; i++) {
+            mFormat.decode(buffer, mOut, mFirstRecord + i);
+        }
+    }
+}
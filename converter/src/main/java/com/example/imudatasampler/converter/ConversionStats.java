@@ -0,0 +1,43 @@
+package com.example.imudatasampler.converter;
+
+/**
+ * Totals of a conversion run, used for the command-line summary and the benchmark.
+ */
+public final class ConversionStats {
+    long sessions;
+    long files;
+    long bytes;
+    long records;
+    long rows;
+    long failedSessions;
+
+    synchronized void add(ConversionStats other) {
+        sessions += other.sessions;
+        files += other.files;
+        bytes += other.bytes;
+        records += other.records;
+        rows += other.rows;
+        failedSessions += other.failedSessions;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getFailedSessions() {
+        return failedSessions;
+    }
+
+    public String format(long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("%d sessions, %d files, %.1f MB, %d records, %d rows in %.2f s"
+                        + " (%.1f MB/s, %.0f records/s)%s",
+                sessions, files, bytes / 1e6, records, rows, seconds,
+                bytes / 1e6 / seconds, records / seconds,
+                failedSessions > 0 ? ", " + failedSessions + " sessions failed" : "");
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.imudatasampler.converter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures conversion throughput on synthetic sessions for increasing pool sizes, reporting
+ * MB/s and records/s for decoding alone and for the full conversion including CSV output.
+ *
+ * Usage: {@code ConverterBenchmark [sessions] [recordsPerStream]}
+ */
+public final class ConverterBenchmark {
+    private static final String[] VECTOR_STREAMS = {"accelerometer", "gyroscope", "magnetometer"};
+
+    private ConverterBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int recordsPerStream = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        // The same amount of data as many sessions and as one, which only scales if the
+        // work within a session is parallel.
+        run(sessionCount, recordsPerStream);
+        run(1, sessionCount * recordsPerStream);
+    }
+
+    private static void run(int sessionCount, int recordsPerStream) throws IOException {
+        File inputDir = createTempDir("imu-bench-in");
+        File outputDir = createTempDir("imu-bench-out");
+        try {
+            for (int s = 0; s < sessionCount; s++) {
+                writeSyntheticSession(inputDir, 1583100000000L + s * 3600000L, recordsPerStream);
+            }
+            Map<String, List<File>> sessions =
+                    SessionConverter.groupSessions(java.util.Collections.singletonList(inputDir));
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.println(sessionCount + " sessions, " + recordsPerStream
+                    + " records per stream, " + cores + " cores");
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    SessionConverter converter = new SessionConverter(pool);
+                    // Warm-up pass so the JIT has compiled the decode loops.
+                    decodeAll(converter, sessions);
+
+                    long start = System.nanoTime();
+                    ConversionStats decoded = decodeAll(converter, sessions);
+                    long decodeNanos = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    ConversionStats converted = converter.convert(sessions, outputDir);
+                    long convertNanos = System.nanoTime() - start;
+
+                    System.out.println(threads + " threads");
+                    System.out.println("  decode:  " + decoded.format(decodeNanos));
+                    System.out.println("  convert: " + converted.format(convertNanos));
+                } finally {
+                    pool.shutdown();
+                }
+                if (threads == cores) {
+                    break;
+                }
+            }
+        } finally {
+            deleteRecursively(inputDir);
+            deleteRecursively(outputDir);
+        }
+    }
+
+    private static ConversionStats decodeAll(SessionConverter converter,
+                                             Map<String, List<File>> sessions)
+            throws IOException {
+        ConversionStats stats = new ConversionStats();
+        for (List<File> files : sessions.values()) {
+            for (File file : files) {
+                StreamColumns columns = converter.decode(file);
+                stats.files++;
+                stats.bytes += file.length();
+                stats.records += columns.size();
+            }
+            stats.sessions++;
+        }
+        return stats;
+    }
+
+    private static void writeSyntheticSession(File dir, long startMillis, int records)
+            throws IOException {
+        Random random = new Random(startMillis);
+        try (DataOutputStream out = open(new File(dir, startMillis + "_esense_imu_readings"))) {
+            byte[] packet = new byte[StreamFormat.LegacyESense.PACKET_SIZE];
+            for (int i = 0; i < records; i++) {
+                random.nextBytes(packet);
+                packet[0] = 0x55;
+                packet[1] = (byte) i;
+                out.write(packet);
+                out.writeLong(startMillis + i * 10L);
+            }
+        }
+        for (String stream : VECTOR_STREAMS) {
+            File file = new File(dir, startMillis + "_" + stream + "_readings" + startMillis);
+            try (DataOutputStream out = open(file)) {
+                for (int i = 0; i < records; i++) {
+                    out.writeFloat(random.nextFloat());
+                    out.writeFloat(random.nextFloat());
+                    out.writeFloat(random.nextFloat());
+                    out.writeLong(startMillis + i * 5L + 2);
+                }
+            }
+        }
+        try (DataOutputStream out = open(new File(dir, startMillis + "_pressure"))) {
+            StreamFormat.writeSessionHeader(out, "pressure", new String[]{"hpa"});
+            for (int i = 0; i < records; i++) {
+                out.writeLong(startMillis + i * 40L + 1);
+                out.writeFloat(1013 + random.nextFloat());
+            }
+        }
+    }
+
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        return java.nio.file.Files.createTempDirectory(prefix).toFile();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
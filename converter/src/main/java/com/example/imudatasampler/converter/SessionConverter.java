@@ -0,0 +1,220 @@
+package com.example.imudatasampler.converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Converts recorded session files pulled off devices into one time-aligned CSV per session.
+ *
+ * Files are grouped into sessions by the recording time that prefixes their names. Sessions,
+ * the streams within a session and the chunks within a stream are all decoded as fork-join
+ * tasks on one pool, and each session's CSV is formatted by parallel tasks over time ranges
+ * (see {@link AlignedCsvWriter}), so a few large sessions use the cores as well as many small
+ * ones do.
+ *
+ * A session that fails to convert is reported on standard error and skipped, so one corrupt
+ * file does not abort a batch of device pulls.
+ *
+ * Usage: {@code converter [-o outputDir] [-j threads] <file or directory>...}
+ */
+public final class SessionConverter {
+    private final ForkJoinPool mPool;
+
+    public SessionConverter(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Groups the given files, and the files of the given directories, by session id.
+     */
+    public static Map<String, List<File>> groupSessions(List<File> inputs) {
+        Map<String, List<File>> sessions = new TreeMap<>();
+        for (File input : inputs) {
+            File[] files = input.isDirectory() ? input.listFiles() : new File[]{input};
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                int separator = name.indexOf('_');
+                if (!file.isFile() || separator <= 0) {
+                    continue;
+                }
+                String session = name.substring(0, separator);
+                List<File> sessionFiles = sessions.get(session);
+                if (sessionFiles == null) {
+                    sessionFiles = new ArrayList<>();
+                    sessions.put(session, sessionFiles);
+                }
+                sessionFiles.add(file);
+            }
+        }
+        for (List<File> files : sessions.values()) {
+            Collections.sort(files);
+        }
+        return sessions;
+    }
+
+    /**
+     * Decodes one stream file, splitting it into record-aligned chunks decoded in parallel.
+     *
+     * @return Return the decoded stream, or null if the file is not a recognized stream file.
+     */
+    public StreamColumns decode(File file) throws IOException {
+        StreamFormat format = StreamFormat.detect(file);
+        if (format == null) {
+            return null;
+        }
+        long recordCount = format.recordCount(file.length());
+        if (recordCount > Integer.MAX_VALUE) {
+            throw new IOException(file + ": too many records (" + recordCount + ")");
+        }
+        StreamColumns columns = format.newColumns((int) recordCount);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChunkDecoder decoder = new ChunkDecoder(channel, format, columns, 0,
+                    (int) recordCount);
+            if (ForkJoinTask.getPool() == mPool) {
+                decoder.invoke();
+            } else {
+                mPool.invoke(decoder);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        columns.sortByTime();
+        return columns;
+    }
+
+    /**
+     * Converts every session into {@code <outputDir>/<session>.csv}, skipping sessions that
+     * fail; their number is reported in the returned stats.
+     */
+    public ConversionStats convert(Map<String, List<File>> sessions, final File outputDir) {
+        final ConversionStats total = new ConversionStats();
+        final List<SessionTask> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<File>> session : sessions.entrySet()) {
+            tasks.add(new SessionTask(session.getKey(), session.getValue(), outputDir));
+        }
+        mPool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                for (SessionTask task : invokeAll(tasks)) {
+                    total.add(task.join());
+                }
+                return null;
+            }
+        });
+        return total;
+    }
+
+    private final class SessionTask extends RecursiveTask<ConversionStats> {
+        private final String mSession;
+        private final List<File> mFiles;
+        private final File mOutputDir;
+
+        SessionTask(String session, List<File> files, File outputDir) {
+            mSession = session;
+            mFiles = files;
+            mOutputDir = outputDir;
+        }
+
+        @Override
+        protected ConversionStats compute() {
+            File output = new File(mOutputDir, mSession + ".csv");
+            try {
+                return convert(output);
+            } catch (IOException | RuntimeException e) {
+                Throwable cause = e;
+                // Join rethrows a decoder's failure wrapped once more for this thread.
+                while (cause instanceof UncheckedIOException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                System.err.println("Skipping session " + mSession + ": " + cause.getMessage());
+                output.delete();
+                ConversionStats stats = new ConversionStats();
+                stats.failedSessions = 1;
+                return stats;
+            }
+        }
+
+        private ConversionStats convert(File output) throws IOException {
+            List<RecursiveTask<StreamColumns>> decoders = new ArrayList<>();
+            for (final File file : mFiles) {
+                decoders.add(new RecursiveTask<StreamColumns>() {
+                    @Override
+                    protected StreamColumns compute() {
+                        try {
+                            return decode(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+            invokeAll(decoders);
+            ConversionStats stats = new ConversionStats();
+            List<StreamColumns> streams = new ArrayList<>();
+            for (int i = 0; i < decoders.size(); i++) {
+                StreamColumns stream = decoders.get(i).join();
+                if (stream == null) {
+                    continue;
+                }
+                streams.add(stream);
+                stats.files++;
+                stats.bytes += mFiles.get(i).length();
+                stats.records += stream.size();
+            }
+            if (streams.isEmpty()) {
+                return stats;
+            }
+            stats.sessions = 1;
+            stats.rows = AlignedCsvWriter.write(output, streams);
+            return stats;
+        }
+    }
+
+    public static void main(String[] args) {
+        File outputDir = new File(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-o".equals(args[i]) && i + 1 < args.length) {
+                outputDir = new File(args[++i]);
+            } else if ("-j".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: converter [-o outputDir] [-j threads]"
+                    + " <file or directory>...");
+            System.exit(2);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Unable to create output directory " + outputDir);
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        ConversionStats stats = new SessionConverter(pool).convert(groupSessions(inputs),
+                outputDir);
+        pool.shutdown();
+        System.out.println(stats.format(System.nanoTime() - start));
+        if (stats.getFailedSessions() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.imudatasampler.converter;
+
+/**
+ * Decoded samples of a single stream, stored column by column so that chunks decoded in
+ * parallel can write into disjoint index ranges of the same arrays.
+ */
+public final class StreamColumns {
+    final String name;
+    final String[] axisNames;
+    final boolean integral;
+    final long[] times;
+    final float[][] axes;
+
+    StreamColumns(String name, String[] axisNames, boolean integral, int recordCount) {
+        this.name = name;
+        this.axisNames = axisNames;
+        this.integral = integral;
+        this.times = new long[recordCount];
+        this.axes = new float[axisNames.length][recordCount];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getAxisNames() {
+        return axisNames.clone();
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getTime(int row) {
+        return times[row];
+    }
+
+    public float getValue(int axis, int row) {
+        return axes[axis][row];
+    }
+
+    /**
+     * Sorts the records by time if the wall clock used by the app stepped backwards while
+     * recording. Streams that are already ordered, the normal case, are left untouched.
+     */
+    void sortByTime() {
+        boolean sorted = true;
+        for (int i = 1; i < times.length && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[] sortedTimes = new long[times.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTimes[i] = times[order[i]];
+        }
+        System.arraycopy(sortedTimes, 0, times, 0, times.length);
+        float[] sortedValues = new float[times.length];
+        for (float[] axis : axes) {
+            for (int i = 0; i < order.length; i++) {
+                sortedValues[i] = axis[order[i]];
+            }
+            System.arraycopy(sortedValues, 0, axis, 0, axis.length);
+        }
+    }
+}
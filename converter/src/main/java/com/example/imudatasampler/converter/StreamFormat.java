@@ -0,0 +1,192 @@
+package com.example.imudatasampler.converter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fixed-size record layout of one recorded stream file. Every supported file is a header of
+ * {@link #headerSize} bytes followed by records of {@link #recordSize} bytes, which is what
+ * allows large files to be split into record-aligned chunks and decoded independently.
+ */
+public abstract class StreamFormat {
+    /**
+     * Magic number opening files in the session format ("IMUS").
+     */
+    public static final int SESSION_MAGIC = 0x494D5553;
+    public static final int SESSION_VERSION = 1;
+
+    // Legacy files written by MainActivity.writeByteArrayToExternalStorage, e.g.
+    // "1583100000000_esense_imu_readings" or "1583100000000_gyroscope_readings1583100000000".
+    private static final Pattern LEGACY_NAME = Pattern.compile("^\\d+_(\\w+?)_readings\\d*$");
+    // eSense ring dumps of rollup mode, "<session>_esense_imu_dump_<dump time>".
+    private static final Pattern LEGACY_ESENSE_DUMP_NAME =
+            Pattern.compile("^\\d+_(esense_imu_dump_\\d+)$");
+    private static final String LEGACY_ESENSE_STREAM = "esense_imu";
+
+    final String streamName;
+    final String[] axisNames;
+    final boolean integral;
+    final long headerSize;
+    final int recordSize;
+
+    StreamFormat(String streamName, String[] axisNames, boolean integral, long headerSize,
+                 int recordSize) {
+        this.streamName = streamName;
+        this.axisNames = axisNames;
+        this.integral = integral;
+        this.headerSize = headerSize;
+        this.recordSize = recordSize;
+    }
+
+    /**
+     * Decodes the record at the buffer's position into row {@code row} of {@code out},
+     * advancing the position by {@link #recordSize}.
+     */
+    abstract void decode(ByteBuffer buffer, StreamColumns out, int row);
+
+    long recordCount(long fileLength) {
+        return Math.max(0, (fileLength - headerSize) / recordSize);
+    }
+
+    StreamColumns newColumns(int recordCount) {
+        return new StreamColumns(streamName, axisNames, integral, recordCount);
+    }
+
+    /**
+     * Identifies the format of a recorded file.
+     *
+     * @return Return the format, or null if the file is not a recognized stream file.
+     */
+    public static StreamFormat detect(File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            DataInputStream in = new DataInputStream(stream);
+            if (file.length() >= 8 && in.readInt() == SESSION_MAGIC) {
+                return readSessionHeader(file, stream, in);
+            }
+        }
+        Matcher matcher = LEGACY_ESENSE_DUMP_NAME.matcher(file.getName());
+        if (matcher.matches()) {
+            return new LegacyESense(matcher.group(1));
+        }
+        matcher = LEGACY_NAME.matcher(file.getName());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String stream = matcher.group(1);
+        if (LEGACY_ESENSE_STREAM.equals(stream)) {
+            return new LegacyESense(LEGACY_ESENSE_STREAM);
+        }
+        return new LegacyVector(stream);
+    }
+
+    /**
+     * Writes the header of a session format file; records follow as described in
+     * {@link Session}.
+     */
+    public static void writeSessionHeader(DataOutputStream out, String streamName,
+                                          String[] axisNames) throws IOException {
+        out.writeInt(SESSION_MAGIC);
+        out.writeShort(SESSION_VERSION);
+        out.writeUTF(streamName);
+        out.writeShort(axisNames.length);
+        for (String axisName : axisNames) {
+            out.writeUTF(axisName);
+        }
+    }
+
+    /**
+     * @return Return the size of a session format record with {@code axisCount} values.
+     */
+    public static int sessionRecordSize(int axisCount) {
+        return Long.BYTES + Float.BYTES * axisCount;
+    }
+
+    private static StreamFormat readSessionHeader(File file, FileInputStream stream,
+                                                  DataInputStream in) throws IOException {
+        int version = in.readUnsignedShort();
+        if (version != SESSION_VERSION) {
+            throw new IOException(file + ": unsupported session format version " + version);
+        }
+        String name = in.readUTF();
+        int axisCount = in.readUnsignedShort();
+        String[] axisNames = new String[axisCount];
+        for (int i = 0; i < axisCount; i++) {
+            axisNames[i] = in.readUTF();
+        }
+        // DataInputStream does not buffer, so the file position is exactly past the header.
+        return new Session(name, axisNames, stream.getChannel().position());
+    }
+
+    /**
+     * eSense notification packet (16 bytes) followed by the receive time in milliseconds.
+     * Bytes 4-15 of the packet hold the gyroscope and accelerometer axes as big-endian shorts.
+     */
+    static final class LegacyESense extends StreamFormat {
+        static final int PACKET_SIZE = 16;
+
+        LegacyESense(String streamName) {
+            super(streamName,
+                    new String[]{"gyro_x", "gyro_y", "gyro_z", "acc_x", "acc_y", "acc_z"},
+                    true, 0, PACKET_SIZE + 8);
+        }
+
+        @Override
+        void decode(ByteBuffer buffer, StreamColumns out, int row) {
+            int start = buffer.position();
+            for (int axis = 0; axis < 6; axis++) {
+                out.axes[axis][row] = buffer.getShort(start + 4 + 2 * axis);
+            }
+            out.times[row] = buffer.getLong(start + PACKET_SIZE);
+            buffer.position(start + recordSize);
+        }
+    }
+
+    /**
+     * Three big-endian floats followed by the time in milliseconds.
+     */
+    static final class LegacyVector extends StreamFormat {
+        LegacyVector(String streamName) {
+            super(streamName, new String[]{"x", "y", "z"}, false, 0, 3 * 4 + 8);
+        }
+
+        @Override
+        void decode(ByteBuffer buffer, StreamColumns out, int row) {
+            out.axes[0][row] = buffer.getFloat();
+            out.axes[1][row] = buffer.getFloat();
+            out.axes[2][row] = buffer.getFloat();
+            out.times[row] = buffer.getLong();
+        }
+    }
+
+    /**
+     * Self-describing session format. All values are big-endian:
+     * <pre>
+     *   int     magic "IMUS"
+     *   short   version
+     *   UTF     stream name (as written by DataOutputStream.writeUTF)
+     *   short   axis count N
+     *   UTF[N]  axis names
+     *   records of: long time in milliseconds, float[N] values
+     * </pre>
+     */
+    static final class Session extends StreamFormat {
+        Session(String streamName, String[] axisNames, long headerSize) {
+            super(streamName, axisNames, false, headerSize,
+                    sessionRecordSize(axisNames.length));
+        }
+
+        @Override
+        void decode(ByteBuffer buffer, StreamColumns out, int row) {
+            out.times[row] = buffer.getLong();
+            for (int axis = 0; axis < axisNames.length; axis++) {
+                out.axes[axis][row] = buffer.getFloat();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.imudatasampler.converter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class AlignedCsvWriterTest {
+    @Test
+    public void write_outputDoesNotDependOnSegmentation() throws Exception {
+        final List<StreamColumns> streams = Arrays.asList(
+                randomStream("esense_imu", 6, true, 5000, 1),
+                randomStream("accelerometer", 3, false, 2000, 2),
+                randomStream("pressure", 1, false, 100, 3));
+
+        String whole = format(streams, Integer.MAX_VALUE);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final int segmentRows : new int[]{1, 7, 1000}) {
+                String segmented = pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return format(streams, segmentRows);
+                    }
+                }).get();
+                assertEquals("segment rows " + segmentRows, whole, segmented);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(7101, whole.split("\n").length);
+    }
+
+    @Test
+    public void segmentBoundaries_keepEqualTimestampsTogether() {
+        StreamColumns stream = new StreamColumns("s", new String[]{"v"}, false, 6);
+        long[] times = {10, 10, 10, 10, 20, 30};
+        System.arraycopy(times, 0, stream.times, 0, times.length);
+
+        long[] boundaries = AlignedCsvWriter.segmentBoundaries(Arrays.asList(stream), 2);
+
+        assertEquals(10, boundaries[0]);
+        assertEquals(31, boundaries[boundaries.length - 1]);
+        for (int i = 1; i < boundaries.length; i++) {
+            assertTrue(boundaries[i] > boundaries[i - 1]);
+            assertTrue(boundaries[i] > 10);
+        }
+        assertEquals(0, AlignedCsvWriter.segmentBoundaries(
+                Arrays.asList(new StreamColumns("e", new String[]{"v"}, false, 0)), 2).length);
+    }
+
+    private static String format(List<StreamColumns> streams, int segmentRows)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AlignedCsvWriter.write(out, streams, segmentRows);
+        return out.toString("UTF-8");
+    }
+
+    // Records at random, often repeated, timestamps in ascending order.
+    private static StreamColumns randomStream(String name, int axisCount, boolean integral,
+                                              int records, long seed) {
+        String[] axes = new String[axisCount];
+        for (int i = 0; i < axisCount; i++) {
+            axes[i] = "a" + i;
+        }
+        StreamColumns stream = new StreamColumns(name, axes, integral, records);
+        Random random = new Random(seed);
+        long time = 1000;
+        for (int i = 0; i < records; i++) {
+            time += random.nextInt(3);
+            stream.times[i] = time;
+            for (float[] axis : stream.axes) {
+                axis[i] = integral ? random.nextInt(1000) - 500 : random.nextFloat();
+            }
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.imudatasampler.converter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SessionConverterTest {
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDir;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mDir = mTemporaryFolder.getRoot();
+        mPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void decode_legacyESenseSpanningManyChunks() throws IOException {
+        // Enough records that the file is split into several chunks.
+        int records = 3 * ChunkDecoder.CHUNK_BYTES / 24 + 7;
+        File file = new File(mDir, "100_esense_imu_readings");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < records; i++) {
+                out.write(new byte[]{0x55, (byte) i, 0, 12});
+                for (int axis = 0; axis < 6; axis++) {
+                    out.writeShort((short) (i + axis - 3));
+                }
+                out.writeLong(1000L + i);
+            }
+        }
+
+        StreamColumns columns = new SessionConverter(mPool).decode(file);
+
+        assertEquals("esense_imu", columns.name);
+        assertEquals(records, columns.size());
+        for (int i = 0; i < records; i++) {
+            assertEquals(1000L + i, columns.times[i]);
+            assertEquals((short) (i - 3), columns.axes[0][i], 0f);
+            assertEquals((short) (i + 2), columns.axes[5][i], 0f);
+        }
+    }
+
+    @Test
+    public void decode_eSenseRingDumpKeepsItsOwnStreamName() throws IOException {
+        File file = new File(mDir, "100_esense_imu_dump_5000");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write(new byte[]{0x55, 0, 0, 12});
+            for (int axis = 0; axis < 6; axis++) {
+                out.writeShort(axis);
+            }
+            out.writeLong(4000);
+        }
+
+        StreamColumns columns = new SessionConverter(mPool).decode(file);
+
+        assertEquals("esense_imu_dump_5000", columns.name);
+        assertEquals(1, columns.size());
+        assertEquals(5, columns.axes[5][0], 0f);
+        assertEquals("100", SessionConverter.groupSessions(Collections.singletonList(mDir))
+                .keySet().iterator().next());
+    }
+
+    @Test
+    public void convert_alignsLegacyAndSessionStreams() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "100_accelerometer_readings100")))) {
+            writeVector(out, 1f, 2f, 3f, 10);
+            writeVector(out, 4f, 5f, 6f, 30);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "100_pressure")))) {
+            StreamFormat.writeSessionHeader(out, "pressure", new String[]{"hpa"});
+            out.writeLong(20);
+            out.writeFloat(1013.5f);
+        }
+
+        Map<String, List<File>> sessions =
+                SessionConverter.groupSessions(Collections.singletonList(mDir));
+        ConversionStats stats = new SessionConverter(mPool).convert(sessions, mDir);
+
+        assertEquals(3, stats.records);
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(new File(mDir, "100.csv")))) {
+            assertEquals("time_millis,accelerometer_x,accelerometer_y,accelerometer_z,"
+                    + "pressure_hpa", reader.readLine());
+            assertEquals("10,1.0,2.0,3.0,", reader.readLine());
+            assertEquals("20,1.0,2.0,3.0,1013.5", reader.readLine());
+            assertEquals("30,4.0,5.0,6.0,1013.5", reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void convert_keepsRecordsSharingATimestamp() throws IOException {
+        // eSense packets of one BLE connection event are stamped in the same millisecond.
+        long[] times = {10, 10, 10, 20};
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "100_esense_imu_readings")))) {
+            for (int i = 0; i < times.length; i++) {
+                out.write(new byte[]{0x55, (byte) i, 0, 12});
+                for (int axis = 0; axis < 6; axis++) {
+                    out.writeShort((short) (i * 10 + axis));
+                }
+                out.writeLong(times[i]);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "100_pressure")))) {
+            StreamFormat.writeSessionHeader(out, "pressure", new String[]{"hpa"});
+            out.writeLong(10);
+            out.writeFloat(1013.5f);
+        }
+
+        Map<String, List<File>> sessions =
+                SessionConverter.groupSessions(Collections.singletonList(mDir));
+        ConversionStats stats = new SessionConverter(mPool).convert(sessions, mDir);
+
+        assertEquals(5, stats.records);
+        assertEquals(5, stats.rows);
+        try (BufferedReader reader = new BufferedReader(
+                new FileReader(new File(mDir, "100.csv")))) {
+            reader.readLine();
+            assertEquals("10,0,1,2,3,4,5,", reader.readLine());
+            assertEquals("10,10,11,12,13,14,15,", reader.readLine());
+            assertEquals("10,20,21,22,23,24,25,", reader.readLine());
+            assertEquals("10,20,21,22,23,24,25,1013.5", reader.readLine());
+            assertEquals("20,30,31,32,33,34,35,1013.5", reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void convert_skipsFailingSession() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "100_pressure")))) {
+            StreamFormat.writeSessionHeader(out, "pressure", new String[]{"hpa"});
+            out.writeLong(20);
+            out.writeFloat(1013.5f);
+        }
+        // Unsupported session format version.
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(mDir, "200_pressure")))) {
+            out.writeInt(StreamFormat.SESSION_MAGIC);
+            out.writeShort(99);
+            out.writeLong(0);
+        }
+
+        Map<String, List<File>> sessions =
+                SessionConverter.groupSessions(Collections.singletonList(mDir));
+        ConversionStats stats = new SessionConverter(mPool).convert(sessions, mDir);
+
+        assertEquals(1, stats.sessions);
+        assertEquals(1, stats.getFailedSessions());
+        assertTrue(new File(mDir, "100.csv").isFile());
+        assertFalse(new File(mDir, "200.csv").exists());
+    }
+
+    private static void writeVector(DataOutputStream out, float x, float y, float z, long time)
+            throws IOException {
+        out.writeFloat(x);
+        out.writeFloat(y);
+        out.writeFloat(z);
+        out.writeLong(time);
+    }
+}